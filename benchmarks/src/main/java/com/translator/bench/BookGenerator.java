@@ -0,0 +1,107 @@
+package com.translator.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Синтетическая книга заданного объёма: главы по ~256 КБ XHTML с абзацами разной длины,
+ * inline-тегами и разделителями сцен — примерно как в обычной прозе. Генерация детерминирована.
+ */
+public final class BookGenerator {
+
+    private static final int CHAPTER_BYTES = 256 * 1024;
+    private static final String[] WORDS = (
+            "the of and to a in that it was he his i you with for had on as her she at but not be "
+            + "they said from all one there were have this by we him so what when which their been would "
+            + "could into them out some more then then over only little like upon time very about night "
+            + "window house letter morning silence captain doctor river garden stranger remember whisper").split(" ");
+
+    private BookGenerator() {
+    }
+
+    /** Пишет книгу с главами общим объёмом не меньше totalBytes (несжатого XHTML). */
+    public static Path write(Path file, long totalBytes) throws IOException {
+        int chapterCount = (int) Math.max(1, (totalBytes + CHAPTER_BYTES - 1) / CHAPTER_BYTES);
+        Random random = new Random(42);
+
+        StringBuilder manifest = new StringBuilder("<item id=\"ncx\" href=\"toc.ncx\" media-type=\"application/x-dtbncx+xml\"/>");
+        StringBuilder spine = new StringBuilder();
+        for (int i = 1; i <= chapterCount; i++) {
+            manifest.append("<item id=\"ch").append(i).append("\" href=\"ch").append(i).append(".xhtml\" media-type=\"application/xhtml+xml\"/>");
+            spine.append("<itemref idref=\"ch").append(i).append("\"/>");
+        }
+        String opf = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<package xmlns=\"http://www.idpf.org/2007/opf\" version=\"2.0\" unique-identifier=\"id\">"
+                + "<metadata xmlns:dc=\"http://purl.org/dc/elements/1.1/\"><dc:title>Benchmark Book</dc:title>"
+                + "<dc:identifier id=\"id\">bench</dc:identifier><dc:language>en</dc:language></metadata>"
+                + "<manifest>" + manifest + "</manifest><spine toc=\"ncx\">" + spine + "</spine></package>";
+        String container = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<container version=\"1.0\" xmlns=\"urn:oasis:names:tc:opendocument:xmlns:container\"><rootfiles>"
+                + "<rootfile full-path=\"OEBPS/content.opf\" media-type=\"application/oebps-package+xml\"/></rootfiles></container>";
+        String ncx = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<ncx xmlns=\"http://www.daisy.org/z3986/2005/ncx/\" version=\"2005-1\"><head/>"
+                + "<docTitle><text>Benchmark Book</text></docTitle><navMap/></ncx>";
+
+        try (OutputStream out = Files.newOutputStream(file); ZipOutputStream zip = new ZipOutputStream(out)) {
+            byte[] mimetype = "application/epub+zip".getBytes(StandardCharsets.US_ASCII);
+            ZipEntry entry = new ZipEntry("mimetype");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(mimetype.length);
+            CRC32 crc = new CRC32();
+            crc.update(mimetype);
+            entry.setCrc(crc.getValue());
+            zip.putNextEntry(entry);
+            zip.write(mimetype);
+            zip.closeEntry();
+
+            put(zip, "META-INF/container.xml", container);
+            put(zip, "OEBPS/content.opf", opf);
+            put(zip, "OEBPS/toc.ncx", ncx);
+            for (int i = 1; i <= chapterCount; i++) {
+                put(zip, "OEBPS/ch" + i + ".xhtml", chapter(i, CHAPTER_BYTES, random));
+            }
+        }
+        return file;
+    }
+
+    /** Одна глава примерно из bytes байт. */
+    public static String chapter(int number, int bytes, Random random) {
+        StringBuilder html = new StringBuilder(bytes + 1024);
+        html.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><title>Chapter ")
+                .append(number).append("</title></head><body><h1>Chapter ").append(number).append("</h1>");
+        while (html.length() < bytes) {
+            if (random.nextInt(40) == 0) {
+                html.append("<p class=\"scene\">* * *</p>");
+                continue;
+            }
+            html.append("<p>");
+            int sentences = 1 + random.nextInt(6);
+            for (int s = 0; s < sentences; s++) {
+                int words = 4 + random.nextInt(20);
+                for (int w = 0; w < words; w++) {
+                    String word = WORDS[random.nextInt(WORDS.length)];
+                    if (w == 0) word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+                    if (random.nextInt(30) == 0) html.append("<i>").append(word).append("</i>");
+                    else if (random.nextInt(60) == 0) html.append("<b>").append(word).append("</b>");
+                    else html.append(word);
+                    html.append(w + 1 < words ? " " : ". ");
+                }
+            }
+            html.append("</p>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    private static void put(ZipOutputStream zip, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+}
@@ -0,0 +1,63 @@
+package com.translator.bench;
+
+import com.translator.config.AppConfig;
+import com.translator.core.AdaptiveBatcher;
+import com.translator.service.BatchProtocol;
+import com.translator.service.PooledBackend;
+import com.translator.service.StreamListener;
+import com.translator.service.TranslationBackend;
+import com.translator.service.TranslationResult;
+
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Заглушка модели с нулевой задержкой: "переводит" в верхний регистр, сохраняя разделители.
+ * Сеть не трогает — в замерах остаётся только CPU-часть конвейера.
+ */
+public class InstantTranslateService implements TranslationBackend {
+
+    private final int parallelism;
+    private final String systemPrompt = PooledBackend.systemPrompt(AppConfig.get(), BatchProtocol.SEPARATOR);
+
+    public InstantTranslateService(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public int getContextSize() {
+        return 8192;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public String getModel() {
+        return "instant";
+    }
+
+    @Override
+    public String getSystemPrompt() {
+        return systemPrompt;
+    }
+
+    @Override
+    public CompletableFuture<TranslationResult> requestBatchAsync(String text, StreamListener listener, Runnable onStarted) {
+        if (onStarted != null) onStarted.run();
+        String content = text.trim().toUpperCase(Locale.ROOT);
+        int tokens = AdaptiveBatcher.estimateTokens(text);
+        return CompletableFuture.completedFuture(new TranslationResult(content, tokens, tokens, 0, 0, 0, false));
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,173 @@
+package com.translator.bench;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.translator.config.AppConfig;
+import com.translator.core.BookPlan;
+import com.translator.core.BookProgress;
+import com.translator.core.EpubProcessor;
+import com.translator.core.ProcessReport;
+import com.translator.metrics.Metrics;
+import com.translator.service.EndpointPool;
+import com.translator.service.ModelEndpoint;
+import com.translator.service.TranslateService;
+import com.translator.sim.OllamaSimulator;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Нагрузочный прогон всего конвейера против {@link OllamaSimulator}: настоящие HTTP-запросы,
+ * пул серверов, повторы и разбиение пакетов, но без GPU. Печатает пропускную способность
+ * и хвосты задержек из {@link Metrics}, итог по исходам на стороне имитации.
+ *
+ * <p>Параметры — системные свойства: {@code load.book.mb}, {@code load.servers},
+ * {@code load.retries}, {@code load.stream}, {@code load.cooldown.millis}, {@code load.report}
+ * (путь для JSON-отчёта) и все {@code sim.*}.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        AppConfig config = AppConfig.get();
+        int bookMegabytes = config.getInt("load.book.mb", 2);
+        int servers = config.getInt("load.servers", 2);
+        int retries = config.getInt("load.retries", 2);
+        boolean streaming = config.getBoolean("load.stream", true);
+        OllamaSimulator.Config simConfig = OllamaSimulator.Config.from(config);
+
+        Path dir = Files.createTempDirectory("epub-load");
+        List<OllamaSimulator> simulators = new ArrayList<>();
+        TranslateService service = null;
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        try {
+            List<ModelEndpoint> endpoints = new ArrayList<>();
+            for (int i = 0; i < servers; i++) {
+                OllamaSimulator simulator = OllamaSimulator.start(simConfig, 0);
+                simulators.add(simulator);
+                endpoints.add(new ModelEndpoint(simulator.url(), simConfig.slots));
+            }
+            EndpointPool pool = new EndpointPool(endpoints, config.getInt("load.cooldown.millis", 1000));
+            service = new TranslateService(pool, retries,
+                    config.getInt("ollama.num_ctx", 8192), streaming);
+            // Как в приложении: прогрев идёт, пока генерируется книга (ollama.warmup=false — без него)
+            service.warmUp();
+
+            Path input = BookGenerator.write(dir.resolve("book.epub"), bookMegabytes * 1024L * 1024L);
+            Path output = dir.resolve("book_RU.epub");
+            out.printf("Книга %d МБ, серверов %d по %d слот(а), поток: %s, seed %d%n",
+                    bookMegabytes, servers, simConfig.slots, streaming, simConfig.seed);
+
+            // Превью пакетов и предупреждения процессора заглушаем — нужен только итог
+            PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+            System.setOut(discard);
+            System.setErr(discard);
+            EpubProcessor processor = new EpubProcessor(null);
+            // Пробный прогон той же книги: оценку сравниваем с фактом
+            long planStarted = System.nanoTime();
+            BookPlan plan = processor.plan(input.toString(), service);
+            long planMillis = (System.nanoTime() - planStarted) / 1_000_000;
+            long started = System.nanoTime();
+            // Когда читатель частичной книги получил первую главу и первую половину книги подряд
+            long[] readyMillis = {-1, -1};
+            Thread watcher = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    for (BookProgress book : processor.getRunningBooks()) {
+                        long now = (System.nanoTime() - started) / 1_000_000;
+                        int ready = book.getReadyPrefix();
+                        if (ready >= 1 && readyMillis[0] < 0) readyMillis[0] = now;
+                        if (ready > 0 && ready * 2 >= book.getChapters().size() && readyMillis[1] < 0) readyMillis[1] = now;
+                    }
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+            watcher.setDaemon(true);
+            watcher.start();
+            ProcessReport report = processor.process(input.toString(), output.toString(), service);
+            long wallMillis = (System.nanoTime() - started) / 1_000_000;
+            watcher.interrupt();
+            watcher.join();
+            System.setOut(out);
+            System.setErr(err);
+
+            JsonObject metrics = Metrics.get().toJson();
+            long charsSent = metrics.get("charsSent").getAsLong();
+            out.printf("Время: %.1f с, глав %d, не переведено глав %d%n",
+                    wallMillis / 1000.0, report.getChapters(), report.getFailedChapters());
+            out.printf("План за %.1f с: пакетов %d, ~%d/%d токенов, оценка %.1f с (%s)%n",
+                    planMillis / 1000.0, plan.getBatches(), plan.getInputTokens(), plan.getOutputTokens(),
+                    plan.getEtaMillis() / 1000.0, plan.getCalibration());
+            out.printf("Готово подряд: первая глава через %.1f с, половина книги через %.1f с%n",
+                    readyMillis[0] / 1000.0, readyMillis[1] / 1000.0);
+            out.printf("Пропускная способность: %.0f симв/с, %d пакетов%n",
+                    charsSent * 1000.0 / Math.max(1, wallMillis), metrics.get("batches").getAsLong());
+            out.println("Пакет, мс:  " + tail(metrics.getAsJsonObject("batchLatencyMillis")));
+            out.println("Ожидание сервера, мс: " + tail(metrics.getAsJsonObject("endpointWaitMillis")));
+            for (Map.Entry<String, JsonElement> endpoint : metrics.getAsJsonObject("endpoints").entrySet()) {
+                out.println("Запрос " + endpoint.getKey() + ", мс: "
+                        + tail(endpoint.getValue().getAsJsonObject().getAsJsonObject("latencyMillis")));
+            }
+            long requests = 0;
+            long promptTokens = 0;
+            long promptMillis = 0;
+            for (Map.Entry<String, JsonElement> endpoint : metrics.getAsJsonObject("endpoints").entrySet()) {
+                JsonObject stats = endpoint.getValue().getAsJsonObject();
+                requests += stats.get("requests").getAsLong();
+                promptTokens += stats.get("promptTokens").getAsLong();
+                promptMillis += stats.get("promptEvalMillis").getAsLong();
+            }
+            out.printf("Оценка промпта: %d токенов, %d мс, на запрос %.1f мс%n",
+                    promptTokens, promptMillis, promptMillis / (double) Math.max(1, requests));
+            out.printf("Повторов %d, проваленных пакетов %d, разбиений %d, непереведённых сегментов %d, обрывов %d%n",
+                    metrics.get("retries").getAsLong(), metrics.get("failedBatches").getAsLong(),
+                    metrics.get("bisections").getAsLong(), metrics.get("untranslatedSegments").getAsLong(),
+                    metrics.get("abortedStreams").getAsLong());
+            JsonObject simulatorJson = new JsonObject();
+            for (OllamaSimulator simulator : simulators) {
+                out.println("Имитация " + simulator.url() + ": " + simulator.stats());
+                JsonObject stats = new JsonObject();
+                simulator.stats().forEach(stats::addProperty);
+                simulatorJson.add(simulator.url(), stats);
+            }
+
+            String reportPath = config.getString("load.report", "");
+            if (!reportPath.isBlank()) {
+                JsonObject json = new JsonObject();
+                json.addProperty("bookMegabytes", bookMegabytes);
+                json.addProperty("wallMillis", wallMillis);
+                json.add("metrics", metrics);
+                json.add("simulators", simulatorJson);
+                Files.writeString(Path.of(reportPath), new GsonBuilder().setPrettyPrinting().create().toJson(json),
+                        StandardCharsets.UTF_8);
+                out.println("Отчёт: " + reportPath);
+            }
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+            if (service != null) service.close();
+            simulators.forEach(OllamaSimulator::close);
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static String tail(JsonObject histogram) {
+        return String.format("p50 %d, p90 %d, p99 %d, max %d (n=%d)",
+                histogram.get("p50").getAsLong(), histogram.get("p90").getAsLong(), histogram.get("p99").getAsLong(),
+                histogram.get("max").getAsLong(), histogram.get("count").getAsLong());
+    }
+}
@@ -0,0 +1,86 @@
+package com.translator.bench;
+
+import com.translator.core.EpubProcessor;
+import com.translator.core.ProcessReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Полный {@link EpubProcessor#process} на сгенерированной книге с мгновенной моделью:
+ * чтение архива, разбор, пакеты, журнал, сериализация и запись результата.
+ * Память переводов выключена, иначе со второй итерации всё бралось бы из кэша.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class ProcessBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int bookMegabytes;
+
+    @Param({"4"})
+    public int parallelism;
+
+    private Path dir;
+    private Path input;
+    private Path output;
+    private PrintStream originalOut;
+    private PrintStream originalErr;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("epub-bench");
+        input = BookGenerator.write(dir.resolve("book.epub"), bookMegabytes * 1024L * 1024L);
+        output = dir.resolve("book_RU.epub");
+        // Логи процессора (превью пакетов) в консоль JMH не нужны; их построение всё равно замеряется
+        originalOut = System.out;
+        originalErr = System.err;
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(discard);
+        System.setErr(discard);
+    }
+
+    @Setup(Level.Iteration)
+    public void cleanOutput() throws IOException {
+        // Без журнала от прошлой итерации — иначе главы возьмутся из него
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(Path.of(output + ".journal"));
+    }
+
+    @Benchmark
+    public ProcessReport process() throws Exception {
+        return new EpubProcessor(null).process(input.toString(), output.toString(), new InstantTranslateService(parallelism));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
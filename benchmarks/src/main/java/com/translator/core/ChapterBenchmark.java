@@ -0,0 +1,151 @@
+package com.translator.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.translator.bench.BookGenerator;
+import com.translator.service.BatchProtocol;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.TextNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Горячие пути одной главы без модели: разбор Jsoup, сбор текстовых узлов,
+ * набор пакетов, разбор ответа (по разделителю и JSON) и сериализация обратно.
+ * rewriteJsoup и rewriteSplice — вся переделка главы (разбор, замена текста, сборка байтов)
+ * через DOM и через {@link XhtmlSplicer}.
+ * Лежит в пакете core, чтобы видеть package-private методы {@link EpubProcessor}.
+ * Для аллокаций: {@code java -jar target/benchmarks.jar Chapter -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChapterBenchmark {
+
+    @Param({"65536", "262144"})
+    public int chapterBytes;
+
+    private String xhtml;
+    private byte[] xhtmlBytes;
+    private Document doc;
+    private List<TextNode> nodes;
+    private List<String> segments;
+    private String translatedBatch;
+    private String translatedJson;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        xhtml = BookGenerator.chapter(1, chapterBytes, new Random(42));
+        xhtmlBytes = xhtml.getBytes(StandardCharsets.UTF_8);
+        doc = EpubProcessor.parseXhtml(xhtml);
+        nodes = new ArrayList<>();
+        segments = new ArrayList<>();
+        for (TextNode node : EpubProcessor.collectNodes(doc.body())) {
+            String text = node.getWholeText();
+            if (text.strip().length() < 2) continue;
+            nodes.add(node);
+            segments.add(text);
+        }
+        // Ответ модели на один пакет обычного размера
+        BatchAssembler.Batch first = assembleAll(null).get(0);
+        translatedBatch = first.text.trim().toUpperCase(Locale.ROOT);
+        // Тот же пакет в JSON-протоколе: {"segments":[{"id":0,"text":"..."}, ...]}
+        JsonArray items = new JsonArray();
+        for (int i = 0; i < first.nodes.size(); i++) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", i);
+            item.addProperty("text", first.nodes.get(i).getWholeText().trim().toUpperCase(Locale.ROOT));
+            items.add(item);
+        }
+        JsonObject answer = new JsonObject();
+        answer.add("segments", items);
+        translatedJson = answer.toString();
+    }
+
+    @Benchmark
+    public Document parse() {
+        return EpubProcessor.parseXhtml(xhtml);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return doc.outerHtml();
+    }
+
+    @Benchmark
+    public byte[] rewriteJsoup() {
+        Document copy = EpubProcessor.parseXhtml(new String(xhtmlBytes, StandardCharsets.UTF_8));
+        for (TextNode node : EpubProcessor.collectNodes(copy.body())) translate(node);
+        return copy.outerHtml().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] rewriteSplice() {
+        XhtmlSplicer splicer = XhtmlSplicer.parse(xhtmlBytes);
+        for (TextNode node : splicer.nodes()) translate(node);
+        return splicer.splice();
+    }
+
+    @Benchmark
+    public List<TextNode> collectNodes() {
+        return EpubProcessor.collectNodes(doc.body());
+    }
+
+    @Benchmark
+    public void assembleBatches(Blackhole blackhole) {
+        assembleAll(blackhole);
+    }
+
+    @Benchmark
+    public List<String> splitParts() {
+        return BatchProtocol.SEPARATOR.decode(translatedBatch, nodes.size());
+    }
+
+    @Benchmark
+    public List<String> decodeJson() {
+        return BatchProtocol.JSON.decode(translatedJson, nodes.size());
+    }
+
+    // «Перевод» меняет каждый содержательный узел, как настоящий
+    private static void translate(TextNode node) {
+        String text = node.getWholeText();
+        if (text.strip().length() >= 2) EpubProcessor.applyTranslation(node, text, text.strip().toUpperCase(Locale.ROOT));
+    }
+
+    private List<BatchAssembler.Batch> assembleAll(Blackhole blackhole) {
+        // Оценка токенов — часть набора пакета, поэтому батчер создаётся заново и стоимость считается в цикле
+        AdaptiveBatcher batcher = new AdaptiveBatcher(8192, 100, 4000, 1.6);
+        BatchAssembler assembler = new BatchAssembler(batcher, BatchProtocol.SEPARATOR);
+        List<BatchAssembler.Batch> batches = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            String text = segments.get(i);
+            BatchAssembler.Batch full = assembler.add(nodes.get(i), text, batcher.segmentCost(text));
+            if (full != null) batches.add(full);
+        }
+        BatchAssembler.Batch last = assembler.finish();
+        if (last != null) batches.add(last);
+        if (blackhole != null) blackhole.consume(batches);
+        return batches;
+    }
+}
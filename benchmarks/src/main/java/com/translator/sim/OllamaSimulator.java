@@ -0,0 +1,403 @@
+package com.translator.sim;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.translator.config.AppConfig;
+import com.translator.core.AdaptiveBatcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Локальная имитация Ollama {@code /api/chat} для нагрузочных и долгих прогонов без GPU.
+ * "Переводит" в верхний регистр, сохраняя разделители, с задержкой на токен и счётчиками
+ * {@code prompt_eval_count}/{@code eval_count}, как настоящий сервер; поддерживает {@code stream}
+ * и {@code format} (JSON-протокол пакетов: ответ {@code {"segments":[...]}}).
+ * Как у Ollama, модель загружается при первом запросе и выгружается после {@code keep_alive} простоя,
+ * а слот не пересчитывает префикс, общий с его прошлым промптом.
+ *
+ * <p>Сбои включаются вероятностями: HTTP 500, зависание без ответа, обрыв потока,
+ * обрезка по контексту, потерянный или лишний разделитель (в JSON — пропущенный сегмент),
+ * вступление "Here is the translation".
+ * Исход зависит только от seed, текста запроса и номера попытки для этого текста,
+ * поэтому прогон воспроизводится при любом порядке потоков.
+ *
+ * <p>Отдельный запуск: {@code java -cp target/benchmarks.jar com.translator.sim.OllamaSimulator -Dsim.port=11435 ...}
+ */
+public class OllamaSimulator implements Closeable {
+
+    private static final String SEPARATOR = "[[[...]]]";
+
+    /** Параметры имитации; ключи {@code sim.*} в AppConfig. */
+    public static final class Config {
+        public long seed = 1;
+        // Одновременных генераций на сервер (OLLAMA_NUM_PARALLEL); остальные ждут
+        public int slots = 1;
+        public long firstTokenMillis = 50;
+        public double promptMillisPerToken = 0.2;
+        public double millisPerToken = 20;
+        public int chunkChars = 16;
+        public double errorRate;
+        public double timeoutRate;
+        public long timeoutMillis = 60_000;
+        public double dropRate;
+        public double truncateRate;
+        public double malformedRate;
+        public double preambleRate;
+        // Загрузка модели: при первом запросе и после простоя дольше keep_alive (как у Ollama, по умолчанию 5 минут)
+        public long loadMillis;
+        // Слот помнит свой последний промпт и не пересчитывает общий с ним префикс
+        public boolean prefixCache = true;
+
+        public static Config from(AppConfig config) {
+            Config c = new Config();
+            c.seed = config.getInt("sim.seed", (int) c.seed);
+            c.slots = config.getInt("sim.slots", c.slots);
+            c.firstTokenMillis = config.getInt("sim.first.token.millis", (int) c.firstTokenMillis);
+            c.promptMillisPerToken = config.getDouble("sim.prompt.millis.per.token", c.promptMillisPerToken);
+            c.millisPerToken = config.getDouble("sim.millis.per.token", c.millisPerToken);
+            c.chunkChars = config.getInt("sim.chunk.chars", c.chunkChars);
+            c.errorRate = config.getDouble("sim.error.rate", c.errorRate);
+            c.timeoutRate = config.getDouble("sim.timeout.rate", c.timeoutRate);
+            c.timeoutMillis = config.getInt("sim.timeout.millis", (int) c.timeoutMillis);
+            c.dropRate = config.getDouble("sim.drop.rate", c.dropRate);
+            c.truncateRate = config.getDouble("sim.truncate.rate", c.truncateRate);
+            c.malformedRate = config.getDouble("sim.malformed.rate", c.malformedRate);
+            c.preambleRate = config.getDouble("sim.preamble.rate", c.preambleRate);
+            c.loadMillis = config.getInt("sim.load.millis", (int) c.loadMillis);
+            c.prefixCache = config.getBoolean("sim.prefix.cache", c.prefixCache);
+            return c;
+        }
+    }
+
+    private enum Outcome {OK, ERROR, TIMEOUT, DROP, TRUNCATE}
+
+    private final Config config;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore slots;
+    // Промпты свободных слотов: запрос занимает слот с самым длинным общим префиксом
+    private final List<String> freeSlots = new ArrayList<>();
+    // Модель в памяти: пока идут запросы и ещё keep_alive после последнего
+    private boolean loaded;
+    private int active;
+    private long unloadAt = Long.MAX_VALUE;
+    private final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> stats = new ConcurrentHashMap<>();
+
+    private OllamaSimulator(Config config, int port) throws IOException {
+        this.config = config;
+        this.slots = new Semaphore(Math.max(1, config.slots), true);
+        for (int i = 0; i < Math.max(1, config.slots); i++) freeSlots.add("");
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "ollama-sim");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/api/chat", exchange -> {
+            try {
+                handle(exchange);
+            } catch (IOException e) {
+                count("client_disconnects");
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    public static OllamaSimulator start(Config config, int port) throws IOException {
+        OllamaSimulator simulator = new OllamaSimulator(config, port);
+        simulator.server.start();
+        return simulator;
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Счётчики исходов: requests, ok, errors, timeouts, drops, truncated, malformed, preambles;
+     * loads — загрузки модели, prompt_tokens/cached_prompt_tokens — посчитанные и взятые из кэша слота токены промпта.
+     */
+    public Map<String, Long> stats() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (String key : new String[]{"requests", "ok", "errors", "timeouts", "drops", "truncated", "malformed", "preambles",
+                "client_disconnects", "loads", "prompt_tokens", "cached_prompt_tokens"}) {
+            LongAdder adder = stats.get(key);
+            result.put(key, adder == null ? 0 : adder.sum());
+        }
+        return result;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        JsonObject request = JsonParser.parseString(
+                new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)).getAsJsonObject();
+        // Как у Ollama: без "stream" ответ потоковый
+        boolean stream = !request.has("stream") || request.get("stream").getAsBoolean();
+        JsonArray messages = request.getAsJsonArray("messages");
+        String user = messages.get(messages.size() - 1).getAsJsonObject().get("content").getAsString();
+        StringBuilder promptText = new StringBuilder();
+        for (int i = 0; i < messages.size(); i++) promptText.append(messages.get(i).getAsJsonObject().get("content").getAsString());
+
+        int attempt = attempts.computeIfAbsent(user, k -> new AtomicInteger()).getAndIncrement();
+        // Соседние seed дают у Random похожие первые числа — перемешиваем, иначе повтор повторяет и исход
+        long seed = new SplittableRandom(config.seed * 1_000_003L + user.hashCode() * 31L + attempt).nextLong();
+        Random random = new Random(seed);
+        count("requests");
+
+        Outcome outcome = pickOutcome(random);
+        if (outcome == Outcome.ERROR) {
+            count("errors");
+            sleepMillis(config.firstTokenMillis);
+            byte[] body = "{\"error\":\"simulated failure\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(500, body.length);
+            exchange.getResponseBody().write(body);
+            return;
+        }
+        if (outcome == Outcome.TIMEOUT) {
+            // Молчим, пока клиент не сдастся по таймауту, затем закрываем соединение без ответа
+            count("timeouts");
+            sleepMillis(config.timeoutMillis);
+            return;
+        }
+
+        // С format (JSON-протокол) ответ ограничен схемой: вступления не бывает, а сбой — пропущенный объект
+        boolean json = request.has("format");
+        String answer = json ? translateJson(user) : user.trim().toUpperCase(Locale.ROOT);
+        if (random.nextDouble() < config.malformedRate) {
+            count("malformed");
+            answer = json ? dropItem(answer, random) : malform(answer, random);
+        }
+        if (!json && random.nextDouble() < config.preambleRate) {
+            count("preambles");
+            answer = "Here is the translation:\n\n" + answer;
+        }
+        boolean truncated = outcome == Outcome.TRUNCATE;
+        if (truncated) {
+            count("truncated");
+            answer = answer.substring(0, answer.length() * 3 / 5);
+        }
+
+        int evalTokens = AdaptiveBatcher.estimateTokens(answer);
+        long keepAliveNanos = keepAliveNanos(request);
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        startRequest();
+        String prompt = promptText.toString();
+        String slot = takeSlot(prompt);
+        try {
+            // Как Ollama: prompt_eval_count — только то, что пришлось посчитать
+            int cachedTokens = config.prefixCache ? AdaptiveBatcher.estimateTokens(prompt.substring(0, commonPrefix(slot, prompt))) : 0;
+            int promptTokens = AdaptiveBatcher.estimateTokens(prompt) - cachedTokens;
+            add("prompt_tokens", promptTokens);
+            add("cached_prompt_tokens", cachedTokens);
+            slot = prompt;
+            long promptNanos = (long) (promptTokens * config.promptMillisPerToken * 1_000_000);
+            sleepNanos(config.firstTokenMillis * 1_000_000 + promptNanos);
+            long evalNanos = (long) (evalTokens * config.millisPerToken * 1_000_000);
+
+            if (!stream) {
+                sleepNanos(evalNanos);
+                JsonObject response = chunk(answer, true);
+                addStats(response, promptTokens, promptNanos, evalTokens, evalNanos, truncated);
+                byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                count("ok");
+                return;
+            }
+
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            int dropAt = outcome == Outcome.DROP ? answer.length() / 2 : -1;
+            int step = Math.max(1, config.chunkChars);
+            long nanosPerChar = answer.isEmpty() ? 0 : evalNanos / answer.length();
+            for (int i = 0; i < answer.length(); i += step) {
+                if (dropAt >= 0 && i >= dropAt) {
+                    // Обрыв посреди генерации: поток заканчивается без финального чанка
+                    count("drops");
+                    return;
+                }
+                String piece = answer.substring(i, Math.min(answer.length(), i + step));
+                sleepNanos(nanosPerChar * piece.length());
+                out.write((chunk(piece, false) + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+            JsonObject last = chunk("", true);
+            addStats(last, promptTokens, promptNanos, evalTokens, evalNanos, truncated);
+            out.write((last + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            count("ok");
+        } finally {
+            synchronized (this) {
+                freeSlots.add(slot);
+                if (--active == 0) unloadAt = keepAliveNanos < 0 ? Long.MAX_VALUE : System.nanoTime() + keepAliveNanos;
+            }
+            slots.release();
+        }
+    }
+
+    /** Модель выгружена — первый запрос ждёт загрузку, остальные ждут его. Выгруженный слот теряет кэш. */
+    private synchronized void startRequest() {
+        if (!loaded || (active == 0 && System.nanoTime() - unloadAt > 0)) {
+            loaded = true;
+            Collections.fill(freeSlots, "");
+            if (config.loadMillis > 0) {
+                count("loads");
+                sleepMillis(config.loadMillis);
+            }
+        }
+        active++;
+    }
+
+    private synchronized String takeSlot(String prompt) {
+        int best = 0;
+        for (int i = 1; i < freeSlots.size(); i++) {
+            if (commonPrefix(freeSlots.get(i), prompt) > commonPrefix(freeSlots.get(best), prompt)) best = i;
+        }
+        return freeSlots.remove(best);
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) i++;
+        return i;
+    }
+
+    /** keep_alive запроса: число секунд или "30s"/"10m"/"1h"; отрицательное — навсегда. */
+    private static long keepAliveNanos(JsonObject request) {
+        if (!request.has("keep_alive")) return TimeUnit.MINUTES.toNanos(5);
+        String value = request.get("keep_alive").getAsString().trim();
+        char unit = value.isEmpty() ? 's' : value.charAt(value.length() - 1);
+        double amount = Double.parseDouble(Character.isDigit(unit) ? value : value.substring(0, value.length() - 1));
+        if (amount < 0) return -1;
+        long multiplier = unit == 'h' ? 3600 : unit == 'm' ? 60 : 1;
+        return (long) (amount * multiplier * 1_000_000_000L);
+    }
+
+    private Outcome pickOutcome(Random random) {
+        double r = random.nextDouble();
+        if ((r -= config.errorRate) < 0) return Outcome.ERROR;
+        if ((r -= config.timeoutRate) < 0) return Outcome.TIMEOUT;
+        if ((r -= config.dropRate) < 0) return Outcome.DROP;
+        if ((r -= config.truncateRate) < 0) return Outcome.TRUNCATE;
+        return Outcome.OK;
+    }
+
+    /** Теряет один разделитель (два сегмента слипаются) или добавляет лишний посреди сегмента. */
+    private static String malform(String answer, Random random) {
+        int count = 0;
+        for (int i = answer.indexOf(SEPARATOR); i >= 0; i = answer.indexOf(SEPARATOR, i + 1)) count++;
+        if (count > 0 && random.nextBoolean()) {
+            int target = random.nextInt(count);
+            int position = -1;
+            for (int i = 0; i <= target; i++) position = answer.indexOf(SEPARATOR, position + 1);
+            return answer.substring(0, position) + answer.substring(position + SEPARATOR.length());
+        }
+        int space = answer.indexOf(' ', random.nextInt(Math.max(1, answer.length())));
+        if (space < 0) return answer + " " + SEPARATOR + " ";
+        return answer.substring(0, space) + " " + SEPARATOR + answer.substring(space);
+    }
+
+    /** [{"id":0,"text":"..."}] -> {"segments":[{"id":0,"text":"..."}]} с текстом в верхнем регистре. */
+    private static String translateJson(String user) {
+        JsonArray items = JsonParser.parseString(user).getAsJsonArray();
+        for (int i = 0; i < items.size(); i++) {
+            JsonObject item = items.get(i).getAsJsonObject();
+            item.addProperty("text", item.get("text").getAsString().trim().toUpperCase(Locale.ROOT));
+        }
+        JsonObject answer = new JsonObject();
+        answer.add("segments", items);
+        return answer.toString();
+    }
+
+    /** Модель пропустила один сегмент пакета. */
+    private static String dropItem(String answer, Random random) {
+        JsonObject json = JsonParser.parseString(answer).getAsJsonObject();
+        JsonArray items = json.getAsJsonArray("segments");
+        if (items.size() > 0) items.remove(random.nextInt(items.size()));
+        return json.toString();
+    }
+
+    private static JsonObject chunk(String content, boolean done) {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", "assistant");
+        message.addProperty("content", content);
+        JsonObject json = new JsonObject();
+        json.addProperty("model", "llama3");
+        json.add("message", message);
+        json.addProperty("done", done);
+        return json;
+    }
+
+    private static void addStats(JsonObject json, int promptTokens, long promptNanos, int evalTokens, long evalNanos, boolean truncated) {
+        json.addProperty("done_reason", truncated ? "length" : "stop");
+        json.addProperty("prompt_eval_count", promptTokens);
+        json.addProperty("prompt_eval_duration", promptNanos);
+        json.addProperty("eval_count", evalTokens);
+        json.addProperty("eval_duration", evalNanos);
+    }
+
+    private void count(String key) {
+        add(key, 1);
+    }
+
+    private void add(String key, long value) {
+        stats.computeIfAbsent(key, k -> new LongAdder()).add(value);
+    }
+
+    private static void sleepMillis(long millis) {
+        sleepNanos(millis * 1_000_000);
+    }
+
+    private static void sleepNanos(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        for (long left = nanos; left > 0; left = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(left);
+            if (Thread.currentThread().isInterrupted()) return;
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public static void main(String[] args) throws Exception {
+        AppConfig appConfig = AppConfig.get();
+        OllamaSimulator simulator = start(Config.from(appConfig), appConfig.getInt("sim.port", 11435));
+        System.out.println("Имитация Ollama слушает " + simulator.url() + " (Ctrl+C — выход)");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println("Итог: " + simulator.stats())));
+        Thread.currentThread().join();
+    }
+}
@@ -1,28 +1,48 @@
 package com.translator;
 
 import com.formdev.flatlaf.FlatDarkLaf;
+import com.translator.batch.BatchMain;
+import com.translator.batch.JobQueue;
+import com.translator.config.AppConfig;
+import com.translator.core.BookProgress;
 import com.translator.core.EpubProcessor;
-import com.translator.service.TranslateService; // Импортируем сервис
+import com.translator.core.TranslationMemory;
+import com.translator.metrics.Metrics;
+import com.translator.metrics.MetricsReporter;
+import com.translator.service.TranslationBackend;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import javax.swing.table.AbstractTableModel;
 import javax.swing.text.DefaultCaret;
 import java.awt.*;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.dnd.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.io.File;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 public class Main extends JFrame {
 
     private JTextArea logArea;
     private JLabel statusLabel;
+    private JLabel metricsLabel;
+    private final ChapterTableModel chapterTable = new ChapterTableModel();
+    // Одна память переводов на всё приложение: повторные запуски и новые издания берут готовое из кэша
+    private final TranslationMemory memory = TranslationMemory.openDefault();
+    // Несколько перетащенных книг встают в общую очередь и делят серверы модели
+    private final TranslationBackend backend = TranslationBackend.fromConfig(AppConfig.get());
+    private final EpubProcessor processor = new EpubProcessor(memory);
+    private final JobQueue queue = JobQueue.fromConfig(processor, backend);
 
     public Main() {
         setTitle("EPUB Translator (Google)");
-        setSize(700, 500);
+        setSize(800, 600);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
         setLayout(new BorderLayout());
@@ -50,11 +70,35 @@ public class Main extends JFrame {
         JScrollPane scrollPane = new JScrollPane(logArea);
         scrollPane.setPreferredSize(new Dimension(600, 200));
 
-        add(dropPanel, BorderLayout.CENTER);
+        // Сводка метрик: скорость, задержки пакетов, очередь, ошибки
+        metricsLabel = new JLabel(" ");
+        metricsLabel.setFont(new Font("Consolas", Font.PLAIN, 11));
+        metricsLabel.setBorder(new EmptyBorder(4, 8, 4, 8));
+        new Timer(1000, e -> {
+            metricsLabel.setText(Metrics.get().summary());
+            chapterTable.update(processor.getRunningBooks());
+        }).start();
+        MetricsReporter.fromConfig(Metrics.get());
+
+        // Главы книг в работе: что уже переведено и попало в частичную книгу
+        JTable chapters = new JTable(chapterTable);
+        chapters.setFont(new Font("Consolas", Font.PLAIN, 11));
+        chapters.getColumnModel().getColumn(0).setPreferredWidth(40);
+        chapters.getColumnModel().getColumn(1).setPreferredWidth(260);
+        setupCancelMenu(chapters);
+        JPanel center = new JPanel(new BorderLayout());
+        dropPanel.setPreferredSize(new Dimension(600, 100));
+        center.add(dropPanel, BorderLayout.NORTH);
+        center.add(new JScrollPane(chapters), BorderLayout.CENTER);
+
+        add(metricsLabel, BorderLayout.NORTH);
+        add(center, BorderLayout.CENTER);
         add(scrollPane, BorderLayout.SOUTH);
 
         setupDragAndDrop(dropPanel);
         redirectSystemOut();
+        // Модель загружается, пока пользователь выбирает книгу
+        backend.warmUp();
     }
 
     private void setupDragAndDrop(JPanel panel) {
@@ -70,12 +114,13 @@ public class Main extends JFrame {
                     List<File> droppedFiles = (List<File>) dtde.getTransferable()
                             .getTransferData(DataFlavor.javaFileListFlavor);
 
-                    if (droppedFiles != null && !droppedFiles.isEmpty()) {
-                        File file = droppedFiles.get(0);
-                        if (file.getName().toLowerCase().endsWith(".epub")) {
-                            startTranslation(file);
-                        } else {
-                            log("Ошибка: Это не EPUB файл!");
+                    if (droppedFiles != null) {
+                        for (File file : droppedFiles) {
+                            if (file.getName().toLowerCase().endsWith(".epub")) {
+                                startTranslation(file);
+                            } else {
+                                log("Ошибка: " + file.getName() + " — это не EPUB файл!");
+                            }
                         }
                     }
                 } catch (Exception ex) {
@@ -85,33 +130,121 @@ public class Main extends JFrame {
         });
     }
 
+    /** Правый клик по главе — отменить её книгу; журнал остаётся, и повторное перетаскивание продолжит перевод. */
+    private void setupCancelMenu(JTable table) {
+        table.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                showMenu(e);
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                showMenu(e);
+            }
+
+            private void showMenu(MouseEvent e) {
+                int row = table.rowAtPoint(e.getPoint());
+                if (!e.isPopupTrigger() || row < 0) return;
+                BookProgress book = chapterTable.bookAt(row);
+                JPopupMenu menu = new JPopupMenu();
+                JMenuItem cancel = new JMenuItem("Отменить книгу «" + book.getTitle() + "»");
+                cancel.addActionListener(a -> {
+                    log("--- Отмена: " + book.getTitle() + " ---");
+                    queue.cancel(Path.of(book.getInput()));
+                });
+                menu.add(cancel);
+                menu.show(table, e.getX(), e.getY());
+            }
+        });
+    }
+
     private void startTranslation(File inputFile) {
-        new Thread(() -> {
-            try {
-                statusLabel.setText("Идет перевод...");
-                log("--- Начало работы ---");
-                log("Файл: " + inputFile.getName());
+        log("--- В очередь: " + inputFile.getName() + " ---");
+        Path output = JobQueue.outputFor(inputFile.toPath(), null, JobQueue.languageCode(AppConfig.get()));
+        queue.submit(inputFile.toPath(), output).thenAccept(result -> {
+            if (result.getError() != null) {
+                log("Ошибка (" + inputFile.getName() + "): " + result.getError());
+            } else {
+                log("--- Готово! ---");
+                log("Сохранено: " + output.getFileName());
+            }
+            SwingUtilities.invokeLater(this::updateStatus);
+            if (result.getError() == null) {
+                JOptionPane.showMessageDialog(this, "Готово! Файл сохранен рядом с оригиналом:\n" + output.getFileName());
+            }
+        });
+        updateStatus();
+    }
 
-                String inputPath = inputFile.getAbsolutePath();
-                String outputPath = inputPath.replace(".epub", "_RU.epub");
+    private void updateStatus() {
+        int pending = queue.pending();
+        statusLabel.setText(pending == 0 ? "Перетащи следующий файл" : "Идет перевод... (книг в очереди: " + pending + ")");
+    }
 
-                // СОЗДАЕМ СЕРВИС И ПРОЦЕССОР
-                TranslateService service = new TranslateService();
-                EpubProcessor processor = new EpubProcessor();
+    /** Строка на главу для всех книг в работе; перечитывается раз в секунду. */
+    private static final class ChapterTableModel extends AbstractTableModel {
+        private static final long serialVersionUID = 1L;
+        private static final String[] COLUMNS = {"№", "Глава", "Состояние", "Сегменты"};
+        private List<BookProgress.Chapter> rows = new ArrayList<>();
+        private List<BookProgress> books = new ArrayList<>();
 
-                // ЗАПУСКАЕМ ПРОЦЕСС
-                processor.process(inputPath, outputPath, service);
+        void update(List<BookProgress> running) {
+            List<BookProgress.Chapter> chapters = new ArrayList<>();
+            List<BookProgress> owners = new ArrayList<>();
+            for (BookProgress book : running) {
+                for (BookProgress.Chapter chapter : book.getChapters()) {
+                    chapters.add(chapter);
+                    owners.add(book);
+                }
+            }
+            rows = chapters;
+            books = owners;
+            fireTableDataChanged();
+        }
 
-                log("--- Готово! ---");
-                log("Сохранено: " + new File(outputPath).getName());
-                statusLabel.setText("Перетащи следующий файл");
-                JOptionPane.showMessageDialog(this, "Готово! Файл сохранен рядом с оригиналом.");
+        BookProgress bookAt(int row) {
+            return books.get(row);
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
 
-            } catch (Exception e) {
-                log("Ошибка: " + e.getMessage());
-                e.printStackTrace();
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            BookProgress.Chapter chapter = rows.get(row);
+            switch (column) {
+                case 0:
+                    return chapter.getIndex() + 1;
+                case 1:
+                    return books.get(row).getTitle() + " / " + chapter.getHref();
+                case 2:
+                    switch (chapter.getState()) {
+                        case WAITING:
+                            return "ждёт";
+                        case TRANSLATING:
+                            return "переводится";
+                        case DONE:
+                            return "готова";
+                        default:
+                            return "ошибка";
+                    }
+                default:
+                    return chapter.getSegments() == 0 ? "" : chapter.getSettled() + " / " + chapter.getSegments();
             }
-        }).start();
+        }
     }
 
     private void log(String text) {
@@ -137,7 +270,12 @@ public class Main extends JFrame {
         SwingUtilities.invokeLater(() -> logArea.append(text));
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        // С аргументами или без дисплея — консольный режим
+        if (args.length > 0 || GraphicsEnvironment.isHeadless()) {
+            BatchMain.main(args);
+            return;
+        }
         try {
             UIManager.setLookAndFeel(new FlatDarkLaf());
         } catch (Exception ex) { }
@@ -0,0 +1,157 @@
+package com.translator.batch;
+
+import com.translator.config.AppConfig;
+import com.translator.core.EpubProcessor;
+import com.translator.core.TranslationMemory;
+import com.translator.metrics.Metrics;
+import com.translator.metrics.MetricsReporter;
+import com.translator.service.TranslationBackend;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Консольный режим без GUI — для серверов и ночных прогонов.
+ *
+ * <pre>
+ *   java -jar epub-translator.jar [--jobs N] [--out DIR] book1.epub book2.epub ...
+ *   java -jar epub-translator.jar --watch INBOX [--out DIR] [--jobs N]
+ *   java -jar epub-translator.jar --plan book1.epub ...
+ * </pre>
+ *
+ * Код выхода 0 — все книги переведены полностью, 1 — есть книги с ошибками, 2 — неверные аргументы.
+ */
+public class BatchMain {
+
+    // Сколько при Ctrl+C ждать, пока книги оборвут запросы и допишут журналы и отчёты
+    private static final long SHUTDOWN_WAIT_MILLIS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        AppConfig config = AppConfig.get();
+        int jobs = config.getInt("queue.max.books", 2);
+        Path outputDir = null;
+        Path inbox = null;
+        boolean plan = false;
+        List<Path> files = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--jobs" -> jobs = requirePositive(args, ++i);
+                case "--out" -> outputDir = Path.of(requireValue(args, ++i));
+                case "--watch" -> inbox = Path.of(requireValue(args, ++i));
+                case "--plan" -> plan = true;
+                case "-h", "--help" -> {
+                    usage();
+                    return;
+                }
+                default -> {
+                    if (args[i].startsWith("--")) {
+                        System.err.println("Неизвестный параметр: " + args[i]);
+                        usage();
+                        System.exit(2);
+                    }
+                    files.add(Path.of(args[i]));
+                }
+            }
+        }
+        if ((inbox == null || plan) && files.isEmpty()) {
+            usage();
+            System.exit(2);
+        }
+
+        EpubProcessor processor = new EpubProcessor(TranslationMemory.openDefault());
+        TranslationBackend backend = TranslationBackend.fromConfig(config);
+        if (plan) {
+            System.exit(plan(processor, backend, files));
+        }
+        // Модель загружается, пока читается первая книга
+        backend.warmUp();
+        JobQueue queue = new JobQueue(processor, backend, jobs);
+        String languageCode = JobQueue.languageCode(config);
+        MetricsReporter reporter = MetricsReporter.fromConfig(Metrics.get());
+        // Ctrl+C / SIGTERM: начатые книги обрывают запросы к моделям и сохраняют журнал,
+        // в --watch остаются в processing/ и продолжатся после перезапуска
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> queue.cancelAll(SHUTDOWN_WAIT_MILLIS)));
+
+        if (inbox != null) {
+            Path out = outputDir != null ? outputDir : inbox.resolve("out");
+            long pollMillis = config.getInt("queue.poll.seconds", 10) * 1000L;
+            System.out.println(">>> Слежу за " + inbox.toAbsolutePath() + ", результаты в " + out.toAbsolutePath());
+            queue.watch(inbox, out, languageCode, pollMillis);
+            queue.close();
+            if (reporter != null) reporter.close();
+            return;
+        }
+
+        if (outputDir != null) Files.createDirectories(outputDir);
+        List<CompletableFuture<JobResult>> results = new ArrayList<>();
+        for (Path file : files) {
+            if (!Files.isRegularFile(file)) {
+                System.err.println("Файл не найден: " + file);
+                continue;
+            }
+            results.add(queue.submit(file, JobQueue.outputFor(file, outputDir, languageCode)));
+        }
+        queue.close();
+        if (reporter != null) reporter.close();
+
+        int notDone = files.size() - results.size();
+        System.out.println("\n>>> Итог:");
+        for (CompletableFuture<JobResult> future : results) {
+            JobResult result = future.join();
+            if (!result.isDone()) notDone++;
+            System.out.println("  [" + result.getStatus() + "] " + result.getInput() + " -> " + result.getOutput()
+                    + (result.getError() != null ? " (" + result.getError() + ")" : ""));
+        }
+        System.out.println(">>> " + Metrics.get().summary());
+        System.exit(notDone == 0 ? 0 : 1);
+    }
+
+    /** Пробный прогон: ничего не переводит и не пишет, только печатает план по каждой книге. */
+    private static int plan(EpubProcessor processor, TranslationBackend backend, List<Path> files) {
+        int failed = 0;
+        for (Path file : files) {
+            try {
+                System.out.println(processor.plan(file.toString(), backend).format());
+            } catch (Exception e) {
+                failed++;
+                System.err.println("Не удалось разобрать " + file + ": " + e.getMessage());
+            }
+        }
+        backend.close();
+        return failed == 0 ? 0 : 1;
+    }
+
+    private static String requireValue(String[] args, int i) {
+        if (i >= args.length) {
+            System.err.println("Параметру " + args[i - 1] + " нужно значение");
+            System.exit(2);
+        }
+        return args[i];
+    }
+
+    private static int requirePositive(String[] args, int i) {
+        String value = requireValue(args, i);
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= 1) return number;
+        } catch (NumberFormatException e) {
+            // ниже — то же сообщение, что и для нуля
+        }
+        System.err.println("Параметру " + args[i - 1] + " нужно целое число не меньше 1, а не " + value);
+        usage();
+        System.exit(2);
+        return 0;
+    }
+
+    private static void usage() {
+        System.out.println("Использование:\n"
+                + "  epub-translator [--jobs N] [--out DIR] book.epub ...   перевести файлы и выйти\n"
+                + "  epub-translator --watch INBOX [--out DIR] [--jobs N]   переводить всё, что появляется в INBOX\n"
+                + "  epub-translator --plan book.epub ...                   оценить сегменты, токены, пакеты и время, не переводя\n"
+                + "Без аргументов запускается окно с drag & drop.");
+    }
+}
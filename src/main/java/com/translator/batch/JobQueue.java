@@ -0,0 +1,254 @@
+package com.translator.batch;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.translator.config.AppConfig;
+import com.translator.core.EpubProcessor;
+import com.translator.service.TranslationBackend;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Очередь книг поверх одного {@link TranslationBackend}. Одновременно обрабатывается
+ * не больше {@code queue.max.books} книг; запросы всех книг делят общий пул серверов Ollama,
+ * так что глобальный предел параллельности задаёт он.
+ *
+ * <p>В режиме {@link #watch} очередь живёт в каталоге: новые книги кладутся в inbox,
+ * взятые в работу лежат в {@code processing/}, готовые — в {@code done/} или {@code failed/}.
+ * После перезапуска всё из {@code processing/} ставится в очередь заново и продолжается по журналу.
+ */
+public class JobQueue implements Closeable {
+
+    static final String PROCESSING = "processing";
+    static final String DONE = "done";
+    static final String FAILED = "failed";
+
+    private final EpubProcessor processor;
+    private final TranslationBackend service;
+    private final ExecutorService books;
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Map<Path, Thread> running = new ConcurrentHashMap<>();
+    private final Set<Path> cancelled = ConcurrentHashMap.newKeySet();
+    private volatile boolean stopped;
+    // cancelAll(): отменены все книги, включая ещё не начатые
+    private volatile boolean cancelledAll;
+
+    public JobQueue(EpubProcessor processor, TranslationBackend service, int maxBooks) {
+        this.processor = processor;
+        this.service = service;
+        AtomicInteger counter = new AtomicInteger();
+        this.books = Executors.newFixedThreadPool(Math.max(1, maxBooks), r -> {
+            Thread thread = new Thread(r, "book-" + counter.incrementAndGet());
+            // Незаконченные книги продолжатся по журналу, держать JVM ради них не нужно
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static JobQueue fromConfig(EpubProcessor processor, TranslationBackend service) {
+        return new JobQueue(processor, service, AppConfig.get().getInt("queue.max.books", 2));
+    }
+
+    /** Книга по имени входного файла: {@code book.epub -> <outputDir>/book_<languageCode>.epub}. */
+    public static Path outputFor(Path input, Path outputDir, String languageCode) {
+        String name = input.getFileName().toString();
+        String base = name.toLowerCase().endsWith(".epub") ? name.substring(0, name.length() - 5) : name;
+        Path dir = outputDir != null ? outputDir : input.toAbsolutePath().getParent();
+        return dir.resolve(base + "_" + languageCode + ".epub");
+    }
+
+    /**
+     * Суффикс переведённой книги: {@code translation.target.code}, а если он не задан — ISO-код языка
+     * из {@code translation.target.language} ({@code Russian -> RU}, {@code Deutsch -> DE}).
+     * Неизвестное название языка идёт в имя файла как есть.
+     */
+    public static String languageCode(AppConfig config) {
+        String code = config.getString("translation.target.code", "");
+        if (!code.isEmpty()) return code.strip().toUpperCase(Locale.ROOT);
+        String language = config.getString("translation.target.language", "Russian").strip();
+        for (String iso : Locale.getISOLanguages()) {
+            Locale locale = Locale.forLanguageTag(iso);
+            if (language.equalsIgnoreCase(locale.getDisplayLanguage(Locale.ENGLISH))
+                    || language.equalsIgnoreCase(locale.getDisplayLanguage(locale))) {
+                return iso.toUpperCase(Locale.ROOT);
+            }
+        }
+        return language.replaceAll("[^\\p{L}\\p{N}]", "").toUpperCase(Locale.ROOT);
+    }
+
+    public static Path resultFileFor(Path output) {
+        return Path.of(output + ".result.json");
+    }
+
+    public CompletableFuture<JobResult> submit(Path input, Path output) {
+        pending.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return runJob(input, output);
+            } finally {
+                pending.decrementAndGet();
+            }
+        }, books);
+    }
+
+    /** Книг в очереди и в работе. */
+    public int pending() {
+        return pending.get();
+    }
+
+    /**
+     * Останавливает книгу: запросы к моделям обрываются, журнал остаётся, и повторная
+     * постановка продолжит с того же места. Книга из очереди просто не начнётся.
+     */
+    public void cancel(Path input) {
+        cancelled.add(input);
+        Thread thread = running.get(input);
+        if (thread != null) thread.interrupt();
+    }
+
+    /**
+     * Отменяет все книги, как {@link #cancel}, и ждёт не дольше waitMillis, пока начатые
+     * оборвут запросы и допишут отчёты. Для остановки процесса: журналы остаются для продолжения.
+     */
+    public void cancelAll(long waitMillis) {
+        stop();
+        cancelledAll = true;
+        running.values().forEach(Thread::interrupt);
+        books.shutdown();
+        try {
+            if (!books.awaitTermination(waitMillis, TimeUnit.MILLISECONDS)) {
+                System.err.println(">>> Не дождался остановки книг: " + pending.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private JobResult runJob(Path input, Path output) {
+        String startedAt = Instant.now().toString();
+        long started = System.currentTimeMillis();
+        JobResult result;
+        running.put(input, Thread.currentThread());
+        try {
+            if (isCancelled(input)) throw new CancellationException("книга отменена");
+            result = JobResult.finished(input.toString(), output.toString(), startedAt,
+                    processor.process(input.toString(), output.toString(), service));
+        } catch (Exception e) {
+            String reason = isCancelled(input) ? "отменена" : e.getMessage();
+            System.err.println(">>> Книга " + input.getFileName() + " не переведена: " + reason);
+            result = JobResult.failed(input.toString(), output.toString(), startedAt, System.currentTimeMillis() - started, e);
+        } finally {
+            running.remove(input);
+            cancelled.remove(input);
+            // Прерывание относилось к этой книге, а не к потоку пула
+            Thread.interrupted();
+        }
+        try (Writer writer = Files.newBufferedWriter(resultFileFor(output), StandardCharsets.UTF_8)) {
+            gson.toJson(result, writer);
+        } catch (IOException e) {
+            System.err.println("Не удалось записать отчёт " + resultFileFor(output) + ": " + e.getMessage());
+        }
+        return result;
+    }
+
+    private boolean isCancelled(Path input) {
+        return cancelledAll || cancelled.contains(input);
+    }
+
+    /**
+     * Следит за каталогом inbox до {@link #stop()}. Файл берётся в работу, когда его размер
+     * не менялся между двумя опросами — недокопированные книги не трогаем.
+     * Захват — атомарный перенос в {@code processing/}, поэтому один inbox могут разбирать несколько машин.
+     */
+    public void watch(Path inbox, Path outputDir, String languageCode, long pollMillis) throws IOException, InterruptedException {
+        Path processing = Files.createDirectories(inbox.resolve(PROCESSING));
+        Files.createDirectories(inbox.resolve(DONE));
+        Files.createDirectories(inbox.resolve(FAILED));
+        Files.createDirectories(outputDir);
+
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(processing, "*.epub")) {
+            for (Path claimed : leftovers) {
+                System.out.println(">>> Продолжаю прерванную книгу: " + claimed.getFileName());
+                submitClaimed(inbox, claimed, outputDir, languageCode);
+            }
+        }
+
+        Map<Path, Long> lastSizes = new HashMap<>();
+        while (!stopped) {
+            Map<Path, Long> sizes = new HashMap<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(inbox, "*.epub")) {
+                for (Path file : files) {
+                    if (!Files.isRegularFile(file)) continue;
+                    long size = Files.size(file);
+                    if (!Long.valueOf(size).equals(lastSizes.get(file))) {
+                        sizes.put(file, size);
+                        continue;
+                    }
+                    Path claimed = processing.resolve(file.getFileName());
+                    try {
+                        Files.move(file, claimed, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (NoSuchFileException e) {
+                        continue; // забрал кто-то другой
+                    }
+                    System.out.println(">>> В очередь: " + file.getFileName());
+                    submitClaimed(inbox, claimed, outputDir, languageCode);
+                }
+            }
+            lastSizes = sizes;
+            Thread.sleep(pollMillis);
+        }
+    }
+
+    private void submitClaimed(Path inbox, Path claimed, Path outputDir, String languageCode) {
+        submit(claimed, outputFor(claimed, outputDir, languageCode)).thenAccept(result -> {
+            // Остановленная вместе с процессом книга остаётся в processing/ и продолжится после перезапуска
+            if (cancelledAll && !result.isDone()) return;
+            Path target = inbox.resolve(result.isDone() ? DONE : FAILED).resolve(claimed.getFileName());
+            try {
+                Files.move(claimed, target, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                System.err.println("Не удалось перенести " + claimed + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /** Прекращает приём новых книг из inbox; начатые продолжают работу. */
+    public void stop() {
+        stopped = true;
+    }
+
+    /** Дожидается всех поставленных книг. */
+    @Override
+    public void close() {
+        stop();
+        books.shutdown();
+        try {
+            while (!books.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.out.println(">>> Книг в работе: " + pending.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
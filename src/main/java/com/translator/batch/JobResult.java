@@ -0,0 +1,94 @@
+package com.translator.batch;
+
+import com.translator.core.ProcessReport;
+
+/**
+ * Итог одной книги в очереди. Сохраняется рядом с результатом как {@code <output>.result.json},
+ * чтобы ночной прогон можно было разобрать скриптом.
+ */
+public class JobResult {
+
+    public static final String DONE = "done";
+    public static final String PARTIAL = "partial";
+    public static final String FAILED = "failed";
+
+    private final String input;
+    private final String output;
+    private final String status;
+    private final String title;
+    private final int chapters;
+    private final int resumedChapters;
+    private final int failedChapters;
+    private final String startedAt;
+    private final long elapsedMillis;
+    private final String error;
+
+    private JobResult(String input, String output, String status, String title, int chapters, int resumedChapters,
+                      int failedChapters, String startedAt, long elapsedMillis, String error) {
+        this.input = input;
+        this.output = output;
+        this.status = status;
+        this.title = title;
+        this.chapters = chapters;
+        this.resumedChapters = resumedChapters;
+        this.failedChapters = failedChapters;
+        this.startedAt = startedAt;
+        this.elapsedMillis = elapsedMillis;
+        this.error = error;
+    }
+
+    static JobResult finished(String input, String output, String startedAt, ProcessReport report) {
+        return new JobResult(input, output, report.isComplete() ? DONE : PARTIAL, report.getTitle(), report.getChapters(),
+                report.getResumedChapters(), report.getFailedChapters(), startedAt, report.getElapsedMillis(), null);
+    }
+
+    static JobResult failed(String input, String output, String startedAt, long elapsedMillis, Throwable error) {
+        String message = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        return new JobResult(input, output, FAILED, null, 0, 0, 0, startedAt, elapsedMillis, message);
+    }
+
+    public String getInput() {
+        return input;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    /** {@link #DONE}, {@link #PARTIAL} (есть упавшие главы, журнал сохранён) или {@link #FAILED}. */
+    public String getStatus() {
+        return status;
+    }
+
+    public boolean isDone() {
+        return DONE.equals(status);
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public int getChapters() {
+        return chapters;
+    }
+
+    public int getResumedChapters() {
+        return resumedChapters;
+    }
+
+    public int getFailedChapters() {
+        return failedChapters;
+    }
+
+    public String getStartedAt() {
+        return startedAt;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
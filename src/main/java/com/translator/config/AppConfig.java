@@ -0,0 +1,98 @@
+package com.translator.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Настройки приложения. Порядок (каждый следующий перекрывает предыдущий):
+ * application.properties из jar, ~/.epub-translator/application.properties, -Dключ=значение.
+ */
+public class AppConfig {
+
+    private static volatile AppConfig instance;
+
+    private final Properties props;
+
+    public AppConfig(Properties props) {
+        this.props = props;
+    }
+
+    public static AppConfig get() {
+        if (instance == null) {
+            synchronized (AppConfig.class) {
+                if (instance == null) instance = load();
+            }
+        }
+        return instance;
+    }
+
+    private static AppConfig load() {
+        Properties props = new Properties();
+        try (InputStream in = AppConfig.class.getResourceAsStream("/application.properties")) {
+            if (in != null) props.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Не удалось прочитать application.properties: " + e.getMessage());
+        }
+        Path userFile = Paths.get(System.getProperty("user.home"), ".epub-translator", "application.properties");
+        if (Files.isRegularFile(userFile)) {
+            try (Reader reader = Files.newBufferedReader(userFile, StandardCharsets.UTF_8)) {
+                props.load(reader);
+            } catch (IOException e) {
+                System.err.println("Не удалось прочитать " + userFile + ": " + e.getMessage());
+            }
+        }
+        for (String name : System.getProperties().stringPropertyNames()) {
+            props.setProperty(name, System.getProperty(name));
+        }
+        return new AppConfig(props);
+    }
+
+    public String getString(String key, String def) {
+        String value = props.getProperty(key);
+        return (value == null || value.isBlank()) ? def : value.trim();
+    }
+
+    public int getInt(String key, int def) {
+        String value = getString(key, null);
+        if (value == null) return def;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Некорректное значение " + key + "=" + value + ", используется " + def);
+            return def;
+        }
+    }
+
+    public double getDouble(String key, double def) {
+        String value = getString(key, null);
+        if (value == null) return def;
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Некорректное значение " + key + "=" + value + ", используется " + def);
+            return def;
+        }
+    }
+
+    public boolean getBoolean(String key, boolean def) {
+        String value = getString(key, null);
+        return value == null ? def : Boolean.parseBoolean(value);
+    }
+
+    public List<String> getList(String key, String def) {
+        List<String> result = new ArrayList<>();
+        for (String item : getString(key, def).split(",")) {
+            if (!item.isBlank()) result.add(item.trim());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,161 @@
+package com.translator.core;
+
+import com.translator.config.AppConfig;
+import com.translator.service.BatchProtocol;
+import com.translator.service.TranslationBackend;
+import com.translator.service.TranslationResult;
+
+/**
+ * Размер пакета в токенах вместо символов.
+ * Стоимость сегмента = оценка входных токенов + ожидаемые токены перевода;
+ * сумма по пакету не должна превышать окно контекста за вычетом системного промпта.
+ * Внутри этого потолка целевой размер подбирается по ходу работы: каждые несколько
+ * пакетов сравниваем скорость (символов оригинала в секунду) с прошлым окном и
+ * двигаем цель в ту сторону, где быстрее. Коэффициенты токенов уточняются по
+ * {@code prompt_eval_count}/{@code eval_count} из ответов Ollama.
+ */
+public class AdaptiveBatcher {
+
+    private static final int MIN_TARGET = 256;
+    private static final int WINDOW = 3;
+    private static final double STEP = 0.2;
+    private static final double ALPHA = 0.2;
+
+    private final int maxCost;
+    private final int promptTokens;
+    // Обёртка сегмента в протоколе пакета (разделитель или JSON-объект) — в запросе и в ответе
+    private final int overheadTokens;
+
+    private double inputFactor = 1.0;
+    private double outputFactor;
+    private int target;
+    private int direction = 1;
+
+    private int windowBatches;
+    private long windowChars;
+    private long windowMillis;
+    private double lastThroughput;
+
+    public AdaptiveBatcher(int contextTokens, int promptTokens, int initialTarget, double outputFactor) {
+        this(contextTokens, promptTokens, initialTarget, outputFactor, BatchProtocol.SEPARATOR.overheadTokens());
+    }
+
+    public AdaptiveBatcher(int contextTokens, int promptTokens, int initialTarget, double outputFactor, int overheadTokens) {
+        this.promptTokens = promptTokens;
+        this.overheadTokens = overheadTokens;
+        // Запас 10% на шаблон чата и неточность оценки
+        this.maxCost = Math.max(MIN_TARGET, (int) ((contextTokens - promptTokens) * 0.9));
+        this.target = clamp(initialTarget);
+        this.outputFactor = outputFactor;
+    }
+
+    public static AdaptiveBatcher forService(TranslationBackend service) {
+        AppConfig config = AppConfig.get();
+        return new AdaptiveBatcher(service.getContextSize(), estimateTokens(service.getSystemPrompt()),
+                config.getInt("batch.target.tokens", 4000), config.getDouble("batch.output.factor", 1.6),
+                service.getProtocol().overheadTokens());
+    }
+
+    /**
+     * Грубая оценка без токенизатора: ASCII ~4 символа на токен,
+     * прочие алфавиты (кириллица и т.п.) ~2.5, иероглифы — по токену на символ.
+     */
+    public static int estimateTokens(CharSequence text) {
+        double tokens = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 128) tokens += 0.25;
+            else if (Character.isIdeographic(c)) tokens += 1.0;
+            else tokens += 0.4;
+        }
+        return (int) Math.ceil(tokens);
+    }
+
+    /** Входные + ожидаемые выходные токены одного сегмента с обёрткой протокола. */
+    public synchronized int segmentCost(String text) {
+        int raw = estimateTokens(text);
+        return (int) Math.ceil(raw * inputFactor + raw * outputFactor) + 2 * overheadTokens;
+    }
+
+    public synchronized int inputTokens(String text) {
+        return (int) Math.ceil(estimateTokens(text) * inputFactor);
+    }
+
+    /** Ожидаемые токены перевода сегмента с обёрткой протокола — часть {@link #segmentCost}. */
+    public synchronized int outputTokens(String text) {
+        return (int) Math.ceil(estimateTokens(text) * outputFactor) + overheadTokens;
+    }
+
+    public synchronized int targetCost() {
+        return target;
+    }
+
+    /** Оценка системного промпта — он идёт в каждом запросе поверх сегментов пакета. */
+    public int promptTokens() {
+        return promptTokens;
+    }
+
+    public int maxCost() {
+        return maxCost;
+    }
+
+    public synchronized void record(int inputChars, int rawInputTokens, TranslationResult result) {
+        if (result == null) return;
+
+        if (rawInputTokens > 0) {
+            // Ollama считает только то, что не взял из кэша слота: системный промпт в счётчик обычно не входит.
+            // Какой вариант ближе к ожиданию — с промптом или без, — тот и вычитаем
+            int count = result.getPromptEvalCount();
+            double expected = rawInputTokens * inputFactor;
+            boolean cached = Math.abs(count - expected) < Math.abs(count - promptTokens - expected);
+            int promptCount = cached ? count : count - promptTokens;
+            if (promptCount > rawInputTokens / 4) {
+                inputFactor = ema(inputFactor, bounded((double) promptCount / rawInputTokens));
+            }
+            if (result.getEvalCount() > 0 && !result.isTruncated()) {
+                outputFactor = ema(outputFactor, bounded((double) result.getEvalCount() / rawInputTokens));
+            }
+        }
+
+        if (result.isTruncated()) {
+            // Ответ обрезан окном контекста — резко уменьшаем пакеты
+            target = clamp(target / 2);
+            direction = -1;
+            resetWindow();
+            System.err.println("  ! Ответ обрезан по лимиту контекста, новый размер пакета ~" + target + " токенов");
+            return;
+        }
+
+        windowBatches++;
+        windowChars += inputChars;
+        windowMillis += Math.max(1, result.getLatencyMillis());
+        if (windowBatches < WINDOW) return;
+
+        double throughput = windowChars * 1000.0 / windowMillis;
+        if (lastThroughput > 0 && throughput < lastThroughput * 1.02) {
+            direction = -direction;
+        }
+        lastThroughput = throughput;
+        // Шаг вниз — деление: при ровной пропускной способности качание вверх-вниз не уводит размер пакета
+        target = clamp((int) (direction > 0 ? target * (1 + STEP) : target / (1 + STEP)));
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        windowBatches = 0;
+        windowChars = 0;
+        windowMillis = 0;
+    }
+
+    private int clamp(int value) {
+        return Math.max(MIN_TARGET, Math.min(maxCost, value));
+    }
+
+    private static double ema(double current, double observed) {
+        return current + ALPHA * (observed - current);
+    }
+
+    private static double bounded(double ratio) {
+        return Math.max(0.2, Math.min(5.0, ratio));
+    }
+}
@@ -0,0 +1,61 @@
+package com.translator.core;
+
+import com.translator.service.BatchProtocol;
+import org.jsoup.nodes.TextNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Набирает сегменты главы в пакеты по оценке токенов: пакет закрывается,
+ * когда следующий сегмент уже не помещается в цель {@link AdaptiveBatcher}.
+ * Текст пакета собирается из сегментов по {@link BatchProtocol}.
+ */
+final class BatchAssembler {
+
+    private final AdaptiveBatcher batcher;
+    private final BatchProtocol protocol;
+    private List<TextNode> nodes = new ArrayList<>();
+    private final List<String> segments = new ArrayList<>();
+    private int cost;
+
+    BatchAssembler(AdaptiveBatcher batcher, BatchProtocol protocol) {
+        this.batcher = batcher;
+        this.protocol = protocol;
+    }
+
+    /** Добавляет сегмент стоимостью segmentCost; возвращает пакет, который пришлось закрыть перед ним, или null. */
+    Batch add(TextNode node, String segment, int segmentCost) {
+        Batch closed = null;
+        if (!nodes.isEmpty() && cost + segmentCost > batcher.targetCost()) closed = close();
+        nodes.add(node);
+        segments.add(segment);
+        cost += segmentCost;
+        return closed;
+    }
+
+    /** Последний неполный пакет или null, если сегментов не осталось. */
+    Batch finish() {
+        return nodes.isEmpty() ? null : close();
+    }
+
+    private Batch close() {
+        Batch batch = new Batch(nodes, protocol.encode(segments), cost);
+        nodes = new ArrayList<>();
+        segments.clear();
+        cost = 0;
+        return batch;
+    }
+
+    static final class Batch {
+        final List<TextNode> nodes;
+        final String text;
+        final int cost;
+
+        Batch(List<TextNode> nodes, String text, int cost) {
+            this.nodes = nodes;
+            this.text = text;
+            this.cost = cost;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.translator.core;
+
+import com.translator.service.TranslationResult;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Итог пробного прогона ({@link EpubProcessor#plan}): сколько сегментов, токенов и пакетов уйдёт модели
+ * по каждой главе и сколько это займёт при скорости, измеренной коротким запросом.
+ */
+public class BookPlan {
+
+    private final String title;
+    private final List<Chapter> chapters;
+    private final Calibration calibration;
+    private final int parallelism;
+    private final int promptTokens;
+    private final long scanMillis;
+
+    /** promptTokens — системный промпт и обёртка запроса, которые добавляет каждый пакет. */
+    public BookPlan(String title, List<Chapter> chapters, Calibration calibration, int parallelism,
+                    int promptTokens, long scanMillis) {
+        this.title = title;
+        this.chapters = chapters;
+        this.calibration = calibration;
+        this.parallelism = Math.max(1, parallelism);
+        this.promptTokens = promptTokens;
+        this.scanMillis = scanMillis;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public List<Chapter> getChapters() {
+        return chapters;
+    }
+
+    /** Замер скорости или null, если его не было или сервер не ответил. */
+    public Calibration getCalibration() {
+        return calibration;
+    }
+
+    public int getSegments() {
+        return chapters.stream().mapToInt(Chapter::getSegments).sum();
+    }
+
+    public int getMemoryHits() {
+        return chapters.stream().mapToInt(Chapter::getMemoryHits).sum();
+    }
+
+    public int getDuplicates() {
+        return chapters.stream().mapToInt(Chapter::getDuplicates).sum();
+    }
+
+    public long getInputTokens() {
+        return chapters.stream().mapToLong(Chapter::getInputTokens).sum();
+    }
+
+    public long getOutputTokens() {
+        return chapters.stream().mapToLong(Chapter::getOutputTokens).sum();
+    }
+
+    public int getBatches() {
+        return chapters.stream().mapToInt(Chapter::getBatches).sum();
+    }
+
+    /** Промпт всех пакетов: чем мельче пакеты, тем больше его доля во входе. */
+    public long getPromptOverheadTokens() {
+        return (long) getBatches() * promptTokens;
+    }
+
+    /** Оценка времени перевода при всех занятых слотах; -1 — скорость неизвестна. */
+    public long getEtaMillis() {
+        if (calibration == null) return -1;
+        long input = getInputTokens() + getPromptOverheadTokens();
+        return (long) (calibration.seconds(input, getOutputTokens()) * 1000 / parallelism);
+    }
+
+    /** Отчёт для консоли: таблица по главам и итог. */
+    public String format() {
+        StringBuilder out = new StringBuilder();
+        out.append("План: ").append(title).append(" (глав ").append(chapters.size())
+                .append(", разбор ").append(String.format(Locale.ROOT, "%.1f", scanMillis / 1000.0)).append(" с)\n");
+        out.append(String.format("%4s  %-32s %8s %8s %8s %10s %10s %7s%n",
+                "#", "глава", "сегм.", "память", "повторы", "вход ток.", "выход ток.", "пакетов"));
+        for (Chapter chapter : chapters) {
+            out.append(String.format("%4d  %-32s %8d %8d %8d %10d %10d %7d%n", chapter.getIndex() + 1,
+                    shorten(chapter.getHref(), 32), chapter.getSegments(), chapter.getMemoryHits(), chapter.getDuplicates(),
+                    chapter.getInputTokens(), chapter.getOutputTokens(), chapter.getBatches()));
+        }
+        out.append("Итого: сегментов ").append(getSegments()).append(", из памяти ").append(getMemoryHits())
+                .append(", повторов ").append(getDuplicates()).append("; токенов ~").append(getInputTokens())
+                .append(" на входе (+").append(getPromptOverheadTokens()).append(" промпт пакетов), ~")
+                .append(getOutputTokens()).append(" на выходе; пакетов ").append(getBatches()).append('\n');
+        if (calibration == null) {
+            out.append("Время: неизвестно — замера скорости не было\n");
+        } else {
+            out.append("Замер: ").append(calibration).append('\n');
+            out.append("Время: ~").append(formatDuration(getEtaMillis())).append(" при ").append(parallelism)
+                    .append(" пакетах одновременно\n");
+        }
+        return out.toString();
+    }
+
+    static String formatDuration(long millis) {
+        long minutes = Math.round(millis / 60_000.0);
+        if (minutes < 1) return (millis / 1000) + " с";
+        if (minutes < 60) return minutes + " мин";
+        return (minutes / 60) + " ч " + (minutes % 60) + " мин";
+    }
+
+    private static String shorten(String text, int max) {
+        return text.length() <= max ? text : "…" + text.substring(text.length() - max + 1);
+    }
+
+    /** Одна глава: сегменты к переводу и что из них уйдёт модели. */
+    public static class Chapter {
+        private final int index;
+        private final String href;
+        private final int segments;
+        private final int memoryHits;
+        private final int duplicates;
+        private final long inputTokens;
+        private final long outputTokens;
+        private final int batches;
+
+        public Chapter(int index, String href, int segments, int memoryHits, int duplicates,
+                       long inputTokens, long outputTokens, int batches) {
+            this.index = index;
+            this.href = href;
+            this.segments = segments;
+            this.memoryHits = memoryHits;
+            this.duplicates = duplicates;
+            this.inputTokens = inputTokens;
+            this.outputTokens = outputTokens;
+            this.batches = batches;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getHref() {
+            return href;
+        }
+
+        /** Сегменты, которые прошли {@link SegmentFilter}. */
+        public int getSegments() {
+            return segments;
+        }
+
+        public int getMemoryHits() {
+            return memoryHits;
+        }
+
+        /** Повторы сегментов, уже отправленных раньше в этой книге. */
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        public long getInputTokens() {
+            return inputTokens;
+        }
+
+        public long getOutputTokens() {
+            return outputTokens;
+        }
+
+        public int getBatches() {
+            return batches;
+        }
+    }
+
+    /**
+     * Скорость одного слота по ответу на пробный пакет. Ollama присылает длительности разбора промпта
+     * и генерации; OpenAI-совместимые серверы — только счётчики, тогда всё время запроса относим к генерации.
+     */
+    public static class Calibration {
+        private final double promptTokensPerSecond;
+        private final double evalTokensPerSecond;
+        private final long latencyMillis;
+
+        public Calibration(double promptTokensPerSecond, double evalTokensPerSecond, long latencyMillis) {
+            this.promptTokensPerSecond = promptTokensPerSecond;
+            this.evalTokensPerSecond = evalTokensPerSecond;
+            this.latencyMillis = latencyMillis;
+        }
+
+        /** Замер по ответу; null, если в нём нечего мерить. outputTokens — оценка, если сервер не прислал eval_count. */
+        static Calibration of(TranslationResult result, int outputTokens) {
+            int evalCount = result.getEvalCount() > 0 ? result.getEvalCount() : outputTokens;
+            if (result.getEvalNanos() > 0 && result.getPromptEvalNanos() > 0 && result.getPromptEvalCount() > 0) {
+                return new Calibration(result.getPromptEvalCount() * 1e9 / result.getPromptEvalNanos(),
+                        evalCount * 1e9 / result.getEvalNanos(), result.getLatencyMillis());
+            }
+            if (evalCount <= 0 || result.getLatencyMillis() <= 0) return null;
+            return new Calibration(0, evalCount * 1000.0 / result.getLatencyMillis(), result.getLatencyMillis());
+        }
+
+        /** Промпт, ток/с; 0 — отдельно не измерен и входит в скорость генерации. */
+        public double getPromptTokensPerSecond() {
+            return promptTokensPerSecond;
+        }
+
+        public double getEvalTokensPerSecond() {
+            return evalTokensPerSecond;
+        }
+
+        double seconds(long inputTokens, long outputTokens) {
+            double prompt = promptTokensPerSecond > 0 ? inputTokens / promptTokensPerSecond : 0;
+            return prompt + outputTokens / evalTokensPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            String prompt = promptTokensPerSecond > 0
+                    ? String.format(Locale.ROOT, "промпт %.0f ток/с, ", promptTokensPerSecond) : "";
+            return prompt + String.format(Locale.ROOT, "генерация %.1f ток/с (запрос %d мс)", evalTokensPerSecond, latencyMillis);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.translator.core;
+
+import com.translator.config.AppConfig;
+import com.translator.epub.EpubPackage;
+import com.translator.epub.ZipArchive;
+import com.translator.service.TranslationBackend;
+import com.translator.service.TranslationResult;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.epub.EpubReader;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.TextNode;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipException;
+
+/**
+ * Пробный прогон книги. Главы разбираются тем же способом, что при переводе, сегменты проходят
+ * {@link SegmentFilter}, память переводов и повторы в книге, а оставшиеся раскладываются на пакеты
+ * {@link BatchAssembler}. Модели уходит один короткий пакет из начала книги: по ответу измеряется
+ * скорость и уточняются коэффициенты токенов {@link AdaptiveBatcher} — как после первого пакета настоящего прогона.
+ */
+final class BookPlanner {
+
+    private final TranslationMemory memory;
+    private final RewriteMode rewriteMode;
+    private final TranslationBackend service;
+    private final AdaptiveBatcher batcher;
+    // Сколько токенов оригинала отправить для замера; 0 — не мерить
+    private final int calibrationTokens = AppConfig.get().getInt("plan.calibration.tokens", 256);
+    private final Set<String> seen = new HashSet<>();
+    private final List<Scan> scans = new ArrayList<>();
+
+    BookPlanner(TranslationMemory memory, RewriteMode rewriteMode, TranslationBackend service) {
+        this.memory = memory;
+        this.rewriteMode = rewriteMode;
+        this.service = service;
+        this.batcher = AdaptiveBatcher.forService(service);
+    }
+
+    BookPlan plan(String inputPath) throws Exception {
+        long started = System.currentTimeMillis();
+        String title = scanBook(inputPath);
+        long scanMillis = System.currentTimeMillis() - started;
+
+        BookPlan.Calibration calibration = calibrate();
+        List<BookPlan.Chapter> chapters = new ArrayList<>(scans.size());
+        for (Scan scan : scans) chapters.add(assemble(scan));
+        return new BookPlan(title, chapters, calibration, service.getParallelism(), batcher.promptTokens(), scanMillis);
+    }
+
+    private String scanBook(String inputPath) throws Exception {
+        try (ZipArchive source = ZipArchive.open(Path.of(inputPath))) {
+            EpubPackage epub = EpubPackage.read(source);
+            for (EpubPackage.Chapter chapter : epub.getChapters()) {
+                scanChapter(chapter.getHref(), source.readAll(chapter.getEntry()));
+            }
+            return epub.getTitle();
+        } catch (ZipException e) {
+            if (!EpubProcessor.startsWithZipHeader(inputPath)) throw e;
+            // Архив не читается потоково — как и при переводе, загружаем книгу целиком через epublib
+            seen.clear();
+            scans.clear();
+            Book book;
+            try (InputStream in = new FileInputStream(inputPath)) {
+                book = new EpubReader().readEpub(in);
+            }
+            for (Resource resource : book.getContents()) {
+                if (resource.getMediaType().getName().contains("html")) scanChapter(resource.getHref(), resource.getData());
+            }
+            return book.getTitle();
+        }
+    }
+
+    /** Сегменты главы в том порядке и с теми же пропусками, что в {@code EpubProcessor.translateChapter}. */
+    private void scanChapter(String href, byte[] xhtml) {
+        Scan scan = new Scan(scans.size(), href);
+        scans.add(scan);
+        for (TextNode node : nodes(xhtml)) {
+            String text = node.getWholeText();
+            if (!SegmentFilter.needsTranslation(node, text)) continue;
+            scan.segments++;
+            if (memory != null && memory.contains(text, service.getModel(), service.getSystemPrompt())) {
+                scan.memoryHits++;
+            } else if (!seen.add(text.strip())) {
+                scan.duplicates++;
+            } else {
+                scan.toSend.add(text);
+            }
+        }
+    }
+
+    private List<TextNode> nodes(byte[] xhtml) {
+        XhtmlSplicer splicer = rewriteMode == RewriteMode.SPLICE ? XhtmlSplicer.parse(xhtml) : null;
+        if (splicer != null) return splicer.nodes();
+        Document doc = EpubProcessor.parseXhtml(new String(xhtml, StandardCharsets.UTF_8));
+        return doc.body() != null ? EpubProcessor.collectNodes(doc.body()) : List.of();
+    }
+
+    private BookPlan.Calibration calibrate() {
+        if (calibrationTokens <= 0) return null;
+        List<String> sample = new ArrayList<>();
+        int tokens = 0;
+        for (Scan scan : scans) {
+            for (String text : scan.toSend) {
+                if (tokens >= calibrationTokens) break;
+                sample.add(text);
+                tokens += AdaptiveBatcher.estimateTokens(text);
+            }
+        }
+        if (sample.isEmpty()) return null;
+
+        String text = service.getProtocol().encode(sample);
+        int expectedOutput = 0;
+        for (String segment : sample) expectedOutput += batcher.outputTokens(segment);
+        System.out.println(">>> Замер скорости: пакет из " + sample.size() + " сегм. (~" + tokens + " токенов)");
+        TranslationResult result = service.requestBatch(text);
+        if (result == null) {
+            System.err.println("  ! Замер скорости: сервер не ответил, время не оценить");
+            return null;
+        }
+        batcher.record(text.length(), AdaptiveBatcher.estimateTokens(text), result);
+        return BookPlan.Calibration.of(result, expectedOutput);
+    }
+
+    private BookPlan.Chapter assemble(Scan scan) {
+        BatchAssembler assembler = new BatchAssembler(batcher, service.getProtocol());
+        long inputTokens = 0;
+        long outputTokens = 0;
+        int batches = 0;
+        for (String text : scan.toSend) {
+            int cost = batcher.segmentCost(text);
+            int output = batcher.outputTokens(text);
+            inputTokens += cost - output;
+            outputTokens += output;
+            // Узлы пакету нужны только для вставки перевода — здесь их нет
+            if (assembler.add(null, text, cost) != null) batches++;
+        }
+        if (assembler.finish() != null) batches++;
+        return new BookPlan.Chapter(scan.index, scan.href, scan.segments, scan.memoryHits, scan.duplicates,
+                inputTokens, outputTokens, batches);
+    }
+
+    /** Глава после разбора: счётчики и сегменты, которые уйдут модели. */
+    private static final class Scan {
+        final int index;
+        final String href;
+        final List<String> toSend = new ArrayList<>();
+        int segments;
+        int memoryHits;
+        int duplicates;
+
+        Scan(int index, String href) {
+            this.index = index;
+            this.href = href;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.translator.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Ход перевода одной книги по главам — для окна приложения. Обновляется из потоков глав. */
+public final class BookProgress {
+
+    public enum State {WAITING, TRANSLATING, DONE, FAILED}
+
+    private final String input;
+    private volatile String title;
+    private volatile List<Chapter> chapters = List.of();
+
+    BookProgress(String input) {
+        this.input = input;
+    }
+
+    void start(String title, List<String> hrefs) {
+        List<Chapter> list = new ArrayList<>(hrefs.size());
+        for (int i = 0; i < hrefs.size(); i++) list.add(new Chapter(i, hrefs.get(i)));
+        this.title = title;
+        this.chapters = Collections.unmodifiableList(list);
+    }
+
+    public String getInput() {
+        return input;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /** Главы в порядке чтения; пусто, пока книга не открыта. */
+    public List<Chapter> getChapters() {
+        return chapters;
+    }
+
+    /** Сколько глав с начала книги уже можно читать подряд (упавшие остаются в оригинале и тоже не мешают). */
+    public int getReadyPrefix() {
+        int count = 0;
+        for (Chapter chapter : chapters) {
+            if (chapter.state != State.DONE && chapter.state != State.FAILED) break;
+            count++;
+        }
+        return count;
+    }
+
+    public static final class Chapter {
+        private final int index;
+        private final String href;
+        private volatile State state = State.WAITING;
+        // Сегменты, которые нужно перевести, и те, с которыми уже всё ясно (переведены или оставлены)
+        private final AtomicInteger segments = new AtomicInteger();
+        private final AtomicInteger settled = new AtomicInteger();
+
+        Chapter(int index, String href) {
+            this.index = index;
+            this.href = href;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getHref() {
+            return href;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public int getSegments() {
+            return segments.get();
+        }
+
+        public int getSettled() {
+            return settled.get();
+        }
+
+        void setState(State state) {
+            this.state = state;
+        }
+
+        void addSegments(int count) {
+            segments.addAndGet(count);
+        }
+
+        void addSettled(int count) {
+            settled.addAndGet(count);
+        }
+    }
+}
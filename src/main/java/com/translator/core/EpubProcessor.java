@@ -1,6 +1,15 @@
 package com.translator.core;
 
-import com.translator.service.TranslateService;
+import com.translator.config.AppConfig;
+import com.translator.epub.EpubPackage;
+import com.translator.epub.PartialEpub;
+import com.translator.epub.RawZipWriter;
+import com.translator.epub.ZipArchive;
+import com.translator.metrics.Metrics;
+import com.translator.service.BatchProtocol;
+import com.translator.service.StreamListener;
+import com.translator.service.TranslationBackend;
+import com.translator.service.TranslationResult;
 import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Resource;
 import nl.siegmann.epublib.epub.EpubReader;
@@ -13,96 +22,599 @@ import org.jsoup.nodes.TextNode;
 
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipException;
 
 public class EpubProcessor {
 
-    private static final int BATCH_SIZE_LIMIT = 8000;
-    private static final String SEP = " [[[...]]] ";
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
 
-    public void process(String inputPath, String outputPath, TranslateService service) throws Exception {
-        EpubReader reader = new EpubReader();
-        Book book = reader.readEpub(new FileInputStream(inputPath));
+    private final TranslationMemory memory;
+    private final RewriteMode rewriteMode;
+    private final int recoveryBudget = AppConfig.get().getInt("batch.recovery.budget", 16);
+    // Как часто обновлять частичную книгу; 0 — не писать её, а главы переводить без приоритета
+    private final long partialMillis = AppConfig.get().getInt("output.partial.seconds", 60) * 1000L;
+    private final Metrics metrics = Metrics.get();
+    private final List<BookProgress> running = new CopyOnWriteArrayList<>();
 
-        ExecutorService executor = Executors.newFixedThreadPool(1);
+    public EpubProcessor() {
+        this(null);
+    }
+
+    public EpubProcessor(TranslationMemory memory) {
+        this(memory, RewriteMode.fromConfig(AppConfig.get()));
+    }
+
+    public EpubProcessor(TranslationMemory memory, RewriteMode rewriteMode) {
+        this.memory = memory;
+        this.rewriteMode = rewriteMode;
+    }
+
+    /** Книги, которые сейчас переводятся, с ходом по главам. */
+    public List<BookProgress> getRunningBooks() {
+        return running;
+    }
+
+    public ProcessReport process(String inputPath, String outputPath, TranslationBackend service) throws Exception {
+        long started = System.currentTimeMillis();
+        TranslationJournal journal = TranslationJournal.open(TranslationJournal.pathFor(outputPath));
+        // Потоки нужны только главам (разбор, сборка пакетов, запись). Пакеты — асинхронные запросы:
+        // ждут сервер в очереди пула, а сколько их идёт одновременно, решает сам пул
+        int parallelism = service.getParallelism();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        BookRun run = new BookRun(service, journal, new BookProgress(inputPath));
+        AtomicInteger failedChapters = new AtomicInteger();
+        running.add(run.progress);
+
+        try {
+            ZipArchive source = null;
+            EpubPackage epub = null;
+            try {
+                source = ZipArchive.open(Path.of(inputPath));
+                epub = EpubPackage.read(source);
+            } catch (ZipException e) {
+                if (source != null) source.close();
+                source = null;
+                // epublib на файле, который вообще не ZIP, зацикливается — такой файл сразу отвергаем
+                if (!startsWithZipHeader(inputPath)) throw e;
+                System.out.println(">>> Потоковое чтение недоступно (" + e.getMessage() + "), книга будет загружена целиком");
+            }
+
+            if (source != null) {
+                try (ZipArchive archive = source) {
+                    processStreaming(archive, epub, outputPath, run, executor, parallelism, failedChapters);
+                }
+            } else {
+                processInMemory(inputPath, outputPath, run, executor, failedChapters);
+            }
+        } catch (Exception e) {
+            // Журнал остаётся на диске: перезапуск продолжит с того же места
+            journal.close();
+            throw e;
+        } finally {
+            // При нормальном завершении запросов уже нет; при прерывании книги обрываем их на серверах
+            run.cancelRequests();
+            executor.shutdownNow();
+            running.remove(run.progress);
+        }
+
+        if (failedChapters.get() == 0) {
+            journal.finish();
+        } else {
+            // Журнал оставляем: повторный запуск доделает только упавшие главы
+            journal.close();
+            System.err.println(">>> Глав с ошибками: " + failedChapters.get() + ". Журнал сохранён для повторного запуска.");
+        }
+        System.out.println("\nГотово! Книгу збережено: " + outputPath);
+        if (memory != null) {
+            System.out.println(">>> Память переводов: " + memory.stats());
+        }
+        return new ProcessReport(run.title, run.chapters, run.resumedChapters, failedChapters.get(),
+                System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Пробный прогон без записи книги: сегменты, токены и пакеты по главам, как их отправил бы {@link #process},
+     * и оценка времени по одному короткому запросу к service. См. {@link BookPlanner}.
+     */
+    public BookPlan plan(String inputPath, TranslationBackend service) throws Exception {
+        return new BookPlanner(memory, rewriteMode, service).plan(inputPath);
+    }
+
+    /**
+     * Основной путь: всё, кроме глав, копируется в результат сжатыми байтами без распаковки,
+     * а в памяти держатся только главы, которые сейчас переводятся (не больше parallelism).
+     * Результат пишется во временный файл и переименовывается только после успешного завершения.
+     * Пока книга переводится, рядом лежит {@link PartialEpub}: готовые главы в ней уже переведены.
+     */
+    private void processStreaming(ZipArchive source, EpubPackage epub, String outputPath, BookRun run,
+                                  ExecutorService executor, int parallelism, AtomicInteger failedChapters) throws Exception {
+        List<EpubPackage.Chapter> chapters = epub.getChapters();
+        run.title = epub.getTitle();
+        run.chapters = chapters.size();
+        System.out.println(">>> ПОЧАТОК ОБРОБКИ КНИГИ: " + epub.getTitle());
+        System.out.println(">>> Модель и серверы: " + run.service + ", параллельно пакетов: " + parallelism);
+
+        Set<String> chapterEntries = new HashSet<>();
+        List<String> hrefs = new ArrayList<>();
+        for (EpubPackage.Chapter chapter : chapters) {
+            chapterEntries.add(chapter.getEntry().getName());
+            hrefs.add(chapter.getHref());
+        }
+        run.progress.start(run.title, hrefs);
+
+        Path partFile = Path.of(outputPath + ".part");
+        PartialEpub partial = partialMillis > 0 ? new PartialEpub(PartialEpub.pathFor(outputPath), partialMillis) : null;
+        try (RawZipWriter out = new RawZipWriter(partFile)) {
+            // mimetype обязан идти первым и несжатым — копия байт в байт это сохраняет
+            ZipArchive.Entry mimetype = source.getEntry("mimetype");
+            if (mimetype != null) out.copyRaw(source, mimetype);
+            if (mimetype != null && partial != null) partial.copyRaw(source, mimetype);
+            for (ZipArchive.Entry entry : source.entries()) {
+                if (entry == mimetype || chapterEntries.contains(entry.getName())) continue;
+                out.copyRaw(source, entry);
+                if (partial != null) partial.copyRaw(source, entry);
+            }
+            if (partial != null) {
+                // Главы — в порядке чтения: готовые из журнала переведены, остальные пока в оригинале
+                for (EpubPackage.Chapter chapter : chapters) {
+                    ZipArchive.Entry entry = chapter.getEntry();
+                    String finished = run.journal.completedChapter(chapter.getHref());
+                    if (finished != null) {
+                        partial.put(entry.getName(), finished.getBytes(StandardCharsets.UTF_8), entry.getDosTime(), entry.getDosDate());
+                    } else {
+                        partial.copyRaw(source, entry);
+                    }
+                }
+                partial.publish();
+                System.out.println(">>> Частичная книга: " + partial.getFile());
+            }
+
+            Semaphore inFlight = new Semaphore(parallelism);
+            List<Future<?>> tasks = new ArrayList<>();
+            for (EpubPackage.Chapter chapter : chapters) {
+                ZipArchive.Entry entry = chapter.getEntry();
+                BookProgress.Chapter progress = run.progress.getChapters().get(chapter.getIndex());
+                String finished = run.journal.completedChapter(chapter.getHref());
+                if (finished != null) {
+                    out.putDeflated(entry.getName(), finished.getBytes(StandardCharsets.UTF_8), entry.getDosTime(), entry.getDosDate());
+                    run.resumedChapters++;
+                    progress.setState(BookProgress.State.DONE);
+                    continue;
+                }
+                inFlight.acquire();
+                tasks.add(executor.submit(() -> {
+                    Metrics.ChapterTimer timer = metrics.startChapter(run.title, chapter.getHref());
+                    progress.setState(BookProgress.State.TRANSLATING);
+                    try {
+                        String pageName = chapter.getHref();
+                        System.out.println("\n--- ОБРОБКА СТОРІНКИ [" + (chapter.getIndex() + 1) + "/" + chapters.size() + "]: " + pageName + " ---");
+                        byte[] original = source.readAll(entry);
+                        timer.lap(Metrics.Phase.READ);
+                        byte[] data = translateXhtml(original, pageName, chapter.getHref(), run, progress, timer);
+                        out.putDeflated(entry.getName(), data, entry.getDosTime(), entry.getDosDate());
+                        run.journal.recordChapter(chapter.getHref(), new String(data, StandardCharsets.UTF_8));
+                        progress.setState(BookProgress.State.DONE);
+                        if (partial != null) {
+                            partial.chapterDone(entry.getName(), data, entry.getDosTime(), entry.getDosDate(),
+                                    run.progress.getReadyPrefix() > chapter.getIndex());
+                        }
+                        timer.lap(Metrics.Phase.WRITE);
+                        metrics.finishChapter(timer);
+                    } catch (Exception e) {
+                        failedChapters.incrementAndGet();
+                        metrics.chapterFailed();
+                        progress.setState(BookProgress.State.FAILED);
+                        System.err.println("Помилка на сторінці " + (chapter.getIndex() + 1) + ": " + e.getMessage());
+                        // Книга должна остаться целой — кладём оригинал главы
+                        try {
+                            if (!out.contains(entry.getName())) out.copyRaw(source, entry);
+                        } catch (IOException copyError) {
+                            throw new UncheckedIOException(copyError);
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) task.get();
+            out.finish();
+        } catch (Exception e) {
+            Files.deleteIfExists(partFile);
+            if (partial != null) {
+                // Книга прервана — частичная остаётся со всем, что успели перевести
+                partial.publish();
+                partial.close();
+            }
+            throw e;
+        }
+        Files.move(partFile, Path.of(outputPath), StandardCopyOption.REPLACE_EXISTING);
+        if (partial != null) partial.delete();
+    }
+
+    /** Запасной путь через epublib — для архивов, которые не читаются потоково (например, ZIP64). */
+    private void processInMemory(String inputPath, String outputPath, BookRun run,
+                                 ExecutorService executor, AtomicInteger failedChapters) throws Exception {
+        Book book;
+        try (InputStream in = new FileInputStream(inputPath)) {
+            book = new EpubReader().readEpub(in);
+        }
 
         List<Resource> contents = book.getContents();
+        run.title = book.getTitle();
         System.out.println(">>> ПОЧАТОК ОБРОБКИ КНИГИ: " + book.getTitle());
+        List<String> hrefs = new ArrayList<>();
+        for (Resource resource : contents) {
+            if (resource.getMediaType().getName().contains("html")) hrefs.add(resource.getHref());
+        }
+        run.progress.start(run.title, hrefs);
 
+        List<Future<?>> tasks = new ArrayList<>();
         for (int i = 0; i < contents.size(); i++) {
             Resource resource = contents.get(i);
             final int index = i + 1;
 
             if (resource.getMediaType().getName().contains("html")) {
-                executor.submit(() -> {
+                BookProgress.Chapter progress = run.progress.getChapters().get(run.chapters);
+                run.chapters++;
+                String finished = run.journal.completedChapter(resource.getHref());
+                if (finished != null) {
+                    resource.setData(finished.getBytes(StandardCharsets.UTF_8));
+                    run.resumedChapters++;
+                    progress.setState(BookProgress.State.DONE);
+                    continue;
+                }
+                tasks.add(executor.submit(() -> {
+                    Metrics.ChapterTimer timer = metrics.startChapter(run.title, resource.getHref());
+                    progress.setState(BookProgress.State.TRANSLATING);
                     try {
                         String pageName = (resource.getTitle() != null) ? resource.getTitle() : resource.getHref();
                         System.out.println("\n--- ОБРОБКА СТОРІНКИ [" + index + "/" + contents.size() + "]: " + pageName + " ---");
 
-                        Document doc = Jsoup.parse(new String(resource.getData(), "UTF-8"));
-                        doc.outputSettings().syntax(Document.OutputSettings.Syntax.xml).escapeMode(Entities.EscapeMode.xhtml).prettyPrint(false);
-
-                        if (doc.body() != null) {
-                            translateChapter(doc.body(), service, pageName);
-                        }
-
-                        resource.setData(doc.outerHtml().getBytes("UTF-8"));
+                        byte[] original = resource.getData();
+                        timer.lap(Metrics.Phase.READ);
+                        byte[] data = translateXhtml(original, pageName, resource.getHref(), run, progress, timer);
+                        resource.setData(data);
+                        run.journal.recordChapter(resource.getHref(), new String(data, StandardCharsets.UTF_8));
+                        timer.lap(Metrics.Phase.WRITE);
+                        metrics.finishChapter(timer);
+                        progress.setState(BookProgress.State.DONE);
                     } catch (Exception e) {
+                        failedChapters.incrementAndGet();
+                        metrics.chapterFailed();
+                        progress.setState(BookProgress.State.FAILED);
                         System.err.println("Помилка на сторінці " + index + ": " + e.getMessage());
                     }
-                });
+                }));
             }
         }
+        for (Future<?> task : tasks) task.get();
 
-        executor.shutdown();
-        executor.awaitTermination(2, TimeUnit.DAYS);
+        try (OutputStream out = new FileOutputStream(outputPath)) {
+            new EpubWriter().write(book, out);
+        }
+    }
 
-        new EpubWriter().write(book, new FileOutputStream(outputPath));
-        System.out.println("\nГотово! Книгу збережено: " + outputPath);
+    static boolean startsWithZipHeader(String path) throws IOException {
+        try (InputStream in = new FileInputStream(path)) {
+            byte[] magic = in.readNBytes(4);
+            return magic.length == 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4;
+        }
     }
 
-    private void translateChapter(Node root, TranslateService service, String pageName) {
-        List<TextNode> allNodes = new ArrayList<>();
-        collectNodes(root, allNodes);
+    /** Глава с переводом (UTF-8). В режиме SPLICE — без DOM, см. {@link XhtmlSplicer}; главу не в UTF-8 разбирает Jsoup. */
+    private byte[] translateXhtml(byte[] xhtml, String pageName, String href, BookRun run,
+                                  BookProgress.Chapter progress, Metrics.ChapterTimer timer) throws Exception {
+        XhtmlSplicer splicer = rewriteMode == RewriteMode.SPLICE ? XhtmlSplicer.parse(xhtml) : null;
+        if (splicer != null) {
+            List<TextNode> nodes = splicer.nodes();
+            timer.lap(Metrics.Phase.PARSE);
+            translateChapter(nodes, pageName, href, run, progress, timer);
+            timer.lap(Metrics.Phase.TRANSLATE);
+            byte[] result = splicer.splice();
+            timer.lap(Metrics.Phase.SERIALIZE);
+            return result;
+        }
+
+        Document doc = parseXhtml(new String(xhtml, StandardCharsets.UTF_8));
+        timer.lap(Metrics.Phase.PARSE);
+
+        if (doc.body() != null) {
+            translateChapter(collectNodes(doc.body()), pageName, href, run, progress, timer);
+        }
+        timer.lap(Metrics.Phase.TRANSLATE);
+        String result = doc.outerHtml();
+        timer.lap(Metrics.Phase.SERIALIZE);
+        return result.getBytes(StandardCharsets.UTF_8);
+    }
 
-        List<TextNode> batchNodes = new ArrayList<>();
-        StringBuilder batchText = new StringBuilder();
+    private void translateChapter(List<TextNode> allNodes, String pageName, String href, BookRun run,
+                                  BookProgress.Chapter progress, Metrics.ChapterTimer timer) throws Exception {
+        TranslationBackend service = run.service;
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        // Сегменты, которые уже переводятся в другом пакете книги: ждём их после отправки своих пакетов
+        List<TextNode> duplicates = new ArrayList<>();
+        List<CompletableFuture<String>> duplicateTranslations = new ArrayList<>();
+        Map<String, CompletableFuture<String>> owned = new HashMap<>();
+
+        BatchAssembler assembler = new BatchAssembler(run.batcher, service.getProtocol());
         int batchCounter = 1;
+        int segments = 0;
+        long chars = 0;
+
+        // С частичной книгой главы разбираются по очереди: повтор достаётся ранней главе,
+        // иначе она ждала бы его в пакете поздней, а тот — за всеми ранними главами
+        boolean scanning = partialMillis > 0;
+        if (scanning) run.scanning.acquire(progress.getIndex());
+        try {
+            for (TextNode node : allNodes) {
+                String text = node.getWholeText();
+                if (!SegmentFilter.needsTranslation(node, text)) {
+                    if (text.strip().length() >= 2) metrics.segmentSkipped();
+                    continue;
+                }
+                segments++;
+                chars += text.length();
+                progress.addSegments(1);
+
+                String resumed = run.journal.completedSegment(href, text);
+                if (resumed != null) {
+                    applyTranslation(node, text, resumed);
+                    metrics.journalHit();
+                    progress.addSettled(1);
+                    continue;
+                }
+
+                if (memory != null) {
+                    String cached = memory.lookup(text, service.getModel(), service.getSystemPrompt());
+                    if (cached != null) {
+                        applyTranslation(node, text, cached);
+                        metrics.memoryHit();
+                        progress.addSettled(1);
+                        continue;
+                    }
+                }
+
+                String key = text.strip();
+                CompletableFuture<String> pending = new CompletableFuture<>();
+                CompletableFuture<String> existing = run.translations.putIfAbsent(key, pending);
+                if (existing != null) {
+                    duplicates.add(node);
+                    duplicateTranslations.add(existing);
+                    metrics.segmentDeduplicated();
+                    continue;
+                }
+                owned.put(key, pending);
+
+                int cost = run.batcher.segmentCost(text);
+                if (cost > run.batcher.maxCost()) {
+                    // Узел нельзя разрезать — уйдёт отдельным пакетом, но модель может не дописать перевод
+                    System.err.println("[" + pageName + "] Сегмент не помещается в контекст модели (~" + cost + " токенов)");
+                }
+                BatchAssembler.Batch full = assembler.add(node, text, cost);
+                if (full != null) {
+                    System.out.println("[" + pageName + "] Надсилаю пакет #" + batchCounter + " (" + full.text.length() + " симв., ~" + full.cost + " токенів)");
+                    batches.add(submitBatch(full.text, full.nodes, href, run, progress));
+                    batchCounter++;
+                }
+            }
+            BatchAssembler.Batch last = assembler.finish();
+            if (last != null) {
+                System.out.println("[" + pageName + "] Надсилаю останній пакет #" + batchCounter);
+                batches.add(submitBatch(last.text, last.nodes, href, run, progress));
+            }
+            if (scanning) {
+                scanning = false;
+                run.scanning.release();
+            }
+            timer.setSize(segments, chars);
+            for (CompletableFuture<Void> batch : batches) {
+                batch.get();
+            }
+            applyDuplicates(duplicates, duplicateTranslations, href, run);
+            progress.addSettled(duplicates.size());
+        } finally {
+            if (scanning) run.scanning.release();
+            // Глава упала до отправки пакета — другие главы не должны ждать эти сегменты вечно
+            for (Map.Entry<String, CompletableFuture<String>> entry : owned.entrySet()) {
+                run.settle(entry.getKey(), entry.getValue(), null);
+            }
+        }
+    }
 
-        for (TextNode node : allNodes) {
+    /** Повторы переводятся тем пакетом, который отправил сегмент первым; здесь только подставляем результат. */
+    private void applyDuplicates(List<TextNode> duplicates, List<CompletableFuture<String>> translations,
+                                 String href, BookRun run) throws Exception {
+        List<String> sources = new ArrayList<>();
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < duplicates.size(); i++) {
+            TextNode node = duplicates.get(i);
             String text = node.getWholeText();
-            if (text.strip().length() < 2) continue;
+            String translation = translations.get(i).get();
+            if (translation == null) {
+                System.err.println("  ! Сегмент оставлен без перевода: " + preview(text));
+                metrics.segmentsUntranslated(1);
+                continue;
+            }
+            applyTranslation(node, text, translation);
+            sources.add(text);
+            parts.add(translation);
+        }
+        if (!sources.isEmpty()) run.journal.recordBatch(href, sources, parts);
+    }
 
-            batchNodes.add(node);
-            batchText.append(text).append(SEP);
+    private CompletableFuture<Void> submitBatch(String textToSend, List<TextNode> nodes, String href, BookRun run,
+                                                BookProgress.Chapter progress) throws InterruptedException {
+        // С частичной книгой ранние главы идут первыми: читатель получает начало книги, а не её куски
+        run.window.acquire(partialMillis > 0 ? progress.getIndex() : 0);
+        long queued = System.nanoTime();
+        metrics.batchQueued();
+        List<String> sources = new ArrayList<>(nodes.size());
+        for (TextNode node : nodes) sources.add(node.getWholeText());
+        // Пакет в очереди, пока его первый запрос ждёт свободный сервер
+        AtomicLong started = new AtomicLong();
+        Runnable onStarted = () -> {
+            long now = System.nanoTime();
+            if (started.compareAndSet(0, now)) metrics.batchStarted((now - queued) / 1_000_000);
+        };
+        int[] budget = {recoveryBudget};
+        return translateRange(textToSend, nodes, sources, href, run, budget, onStarted).whenComplete((done, error) -> {
+            run.window.release();
+            onStarted.run();
+            // Что не удалось перевести, отпускаем: повторы в других главах останутся оригиналом
+            for (String source : sources) run.settle(source.strip(), null);
+            metrics.batchFinished((System.nanoTime() - started.get()) / 1_000_000, nodes.size(), textToSend.length());
+            progress.addSettled(nodes.size());
+        });
+    }
+
+    /**
+     * Переводит диапазон узлов одним запросом. Если число частей в ответе не совпало
+     * с числом узлов (или ответа нет), ничего не вставляет по индексам, а делит диапазон
+     * пополам и повторяет каждую половину — вплоть до одиночных сегментов.
+     * В JSON-протоколе части приходят с id: готовые вставляются, переспрашиваются только пропущенные.
+     * budget — сколько дополнительных запросов ещё можно потратить на исходный пакет.
+     */
+    private CompletableFuture<Void> translateRange(String textToSend, List<TextNode> nodes, List<String> sources,
+                                                   String href, BookRun run, int[] budget, Runnable onStarted) {
+        return requestParts(textToSend, nodes, sources, run, onStarted)
+                .thenCompose(parts -> applyParts(parts, nodes, sources, href, run, budget));
+    }
 
-            if (batchText.length() > BATCH_SIZE_LIMIT) {
-                System.out.println("[" + pageName + "] Надсилаю пакет #" + batchCounter + " (" + batchText.length() + " симв.)");
-                processBatch(batchText.toString(), batchNodes, service);
-                batchCounter++;
-                batchText.setLength(0);
-                batchNodes.clear();
+    private CompletableFuture<Void> applyParts(List<String> parts, List<TextNode> nodes, List<String> sources,
+                                               String href, BookRun run, int[] budget) {
+        BatchProtocol protocol = run.service.getProtocol();
+        if (parts != null && parts.size() == nodes.size() && !parts.contains(null)) {
+            for (int i = 0; i < nodes.size(); i++) accept(nodes.get(i), sources.get(i), parts.get(i), run);
+            run.journal.recordBatch(href, sources, parts);
+            return DONE;
+        }
+
+        if (protocol.isKeyed() && parts != null) {
+            List<TextNode> missingNodes = new ArrayList<>();
+            List<String> missingSources = new ArrayList<>();
+            List<String> doneSources = new ArrayList<>();
+            List<String> doneParts = new ArrayList<>();
+            for (int i = 0; i < nodes.size(); i++) {
+                if (parts.get(i) == null) {
+                    missingNodes.add(nodes.get(i));
+                    missingSources.add(sources.get(i));
+                } else {
+                    accept(nodes.get(i), sources.get(i), parts.get(i), run);
+                    doneSources.add(sources.get(i));
+                    doneParts.add(parts.get(i));
+                }
             }
+            if (!doneSources.isEmpty()) {
+                run.journal.recordBatch(href, doneSources, doneParts);
+                if (budget[0] < 1) {
+                    System.err.println("  ! Лимит повторов исчерпан, без перевода осталось сегментов: " + missingNodes.size());
+                    metrics.segmentsUntranslated(missingNodes.size());
+                    return DONE;
+                }
+                budget[0]--;
+                System.err.println("  ! В ответе нет " + missingNodes.size() + " из " + nodes.size() + " сегментов, переспрашиваю только их");
+                return translateRange(protocol.encode(missingSources), missingNodes, missingSources, href, run, budget, null);
+            }
+            if (nodes.size() == 1 && budget[0] >= 1) {
+                // Сервер ответил, но без нашего id — сбой модели, а не сервера: спрашиваем ещё раз
+                budget[0]--;
+                return translateRange(protocol.encode(sources), nodes, sources, href, run, budget, null);
+            }
+            // Ни одного сегмента — как будто ответа нет
+            parts = null;
         }
-        if (!batchNodes.isEmpty()) {
-            System.out.println("[" + pageName + "] Надсилаю останній пакет #" + batchCounter);
-            processBatch(batchText.toString(), batchNodes, service);
+
+        // Потоковый режим мог успеть вставить сдвинутые сегменты — возвращаем оригинал
+        for (int i = 0; i < nodes.size(); i++) nodes.get(i).text(sources.get(i));
+
+        if (nodes.size() == 1) {
+            if (parts != null && !parts.isEmpty()) {
+                // Модель разбила один абзац на несколько частей — склеиваем, в память не пишем
+                String joined = String.join(" ", parts).trim();
+                applyTranslation(nodes.get(0), sources.get(0), joined);
+                run.settle(sources.get(0).strip(), joined);
+            } else {
+                System.err.println("  ! Сегмент оставлен без перевода: " + preview(sources.get(0)));
+                metrics.segmentsUntranslated(1);
+            }
+            return DONE;
+        }
+        if (budget[0] < 2) {
+            System.err.println("  ! Лимит повторов исчерпан, без перевода осталось сегментов: " + nodes.size());
+            metrics.segmentsUntranslated(nodes.size());
+            return DONE;
         }
+        budget[0] -= 2;
+        metrics.bisected();
+
+        int mid = nodes.size() / 2;
+        System.err.println("  ! Пакет не выровнен (" + (parts == null ? 0 : parts.size()) + " частей на " + nodes.size()
+                + " сегментов), делю на " + mid + " + " + (nodes.size() - mid));
+        // Половины по очереди: бюджет общий, и вторая половина не должна отнимать сервер у первой
+        return translateRange(protocol.encode(sources.subList(0, mid)), nodes.subList(0, mid), sources.subList(0, mid),
+                href, run, budget, null)
+                .thenCompose(done -> translateRange(protocol.encode(sources.subList(mid, nodes.size())),
+                        nodes.subList(mid, nodes.size()), sources.subList(mid, nodes.size()), href, run, budget, null));
     }
 
-    private void processBatch(String textToSend, List<TextNode> nodes, TranslateService service) {
+    /** Перевод сегмента принят: в узел, повторам в книге и в память переводов. */
+    private void accept(TextNode node, String source, String translation, BookRun run) {
+        applyTranslation(node, source, translation);
+        run.settle(source.strip(), translation);
+        if (memory != null) {
+            memory.store(source, run.service.getModel(), run.service.getSystemPrompt(), translation);
+        }
+    }
+
+    /**
+     * Один запрос к модели: части перевода (см. {@link BatchProtocol#decode}) или null,
+     * если ответа нет или он оборван.
+     */
+    private CompletableFuture<List<String>> requestParts(String textToSend, List<TextNode> nodes, List<String> sources,
+                                                         BookRun run, Runnable onStarted) {
+        TranslationBackend service = run.service;
         // Короткое превью оригинала (на всякий случай)
-        String previewOrig = textToSend.substring(0, Math.min(textToSend.length(), 100)).replace("\n", " ");
-        System.out.println("  > Оригинал: " + previewOrig + "...");
+        System.out.println("  > Оригинал: " + preview(textToSend) + "...");
 
         // Отправка на перевод
-        String translated = service.translateBatch(textToSend);
+        StreamingApplier applier = service.isStreaming()
+                ? new StreamingApplier(nodes, sources, service.getProtocol().isKeyed()) : null;
+        CompletableFuture<TranslationResult> request = service.requestBatchAsync(textToSend, applier, onStarted);
+        run.track(request);
+        return request.thenApply(result -> {
+            run.batcher.record(textToSend.length(), AdaptiveBatcher.estimateTokens(textToSend), result);
+            String translated = result == null ? null : result.getContent();
+
+            if (translated == null || translated.isEmpty()) {
+                System.err.println("  ! Ошибка: Нейросеть вернула пустой ответ или произошел таймаут.");
+                return null;
+            }
 
-        if (translated != null && !translated.isEmpty()) {
             // Вывод до 1000 символов ПЕРЕВОДА в консоль
             int logLength = Math.min(translated.length(), 1000);
             String transPreview = translated.substring(0, logLength);
@@ -110,21 +622,166 @@ public class EpubProcessor {
             System.out.println("\n--- ПОЛУЧЕН ПЕРЕВОД (кусок " + logLength + " симв.) ---");
             System.out.println(transPreview);
             if (translated.length() > 1000) System.out.println("... [далее текст скрыт в логах]");
+            if (result.getFirstSegmentMillis() >= 0) {
+                System.out.println("  первый сегмент через " + result.getFirstSegmentMillis() + " мс, весь пакет " + result.getLatencyMillis() + " мс");
+            }
             System.out.println("---------------------------------------------------\n");
 
-            // Разбивка по разделителю и вставка в книгу
-            String[] parts = translated.split("\\[\\[\\[\\.\\.\\.\\]\\]\\]");
-            for (int i = 0; i < nodes.size(); i++) {
-                if (i < parts.length) {
-                    nodes.get(i).text(parts[i].trim());
-                }
+            if (applier == null) return service.getProtocol().decode(translated, nodes.size());
+            return applier.parts(result.isAborted());
+        });
+    }
+
+    /** Вставляет сегменты в узлы по мере прихода и обрывает генерацию, если она пошла вразнос. */
+    private static final class StreamingApplier implements StreamListener {
+        private final List<TextNode> nodes;
+        private final List<String> sources;
+        // Части по id (JSON) — пропуск не сдвигает соседей; иначе по порядку
+        private final boolean keyed;
+        private final String[] parts;
+        private final int[] lengths;
+        private StreamGuard guard;
+        private int received;
+        // Модель выдала лишний сегмент — значит, где-то разбила абзац и всё после сдвинуто
+        private boolean overflow;
+
+        StreamingApplier(List<TextNode> nodes, List<String> sources, boolean keyed) {
+            this.nodes = nodes;
+            this.sources = sources;
+            this.keyed = keyed;
+            this.parts = new String[nodes.size()];
+            this.lengths = new int[sources.size()];
+            for (int i = 0; i < lengths.length; i++) lengths[i] = sources.get(i).length();
+            this.guard = new StreamGuard(lengths);
+        }
+
+        @Override
+        public void onAttempt() {
+            // Повтор на другом сервере начинает пакет заново
+            for (int i = 0; i < parts.length; i++) {
+                if (parts[i] != null) nodes.get(i).text(sources.get(i));
             }
-        } else {
-            System.err.println("  ! Ошибка: Нейросеть вернула пустой ответ или произошел таймаут.");
+            Arrays.fill(parts, null);
+            received = 0;
+            overflow = false;
+            guard = new StreamGuard(lengths);
+        }
+
+        @Override
+        public boolean onSegment(int index, String text) {
+            // Чужой или повторный id ничего не сдвигает — просто не берём
+            if (keyed && (index >= parts.length || parts[index] != null)) return true;
+            String problem = guard.checkSegment(index);
+            if (problem != null) {
+                overflow = true;
+                System.err.println("  ! Обрыв генерации: " + problem);
+                return false;
+            }
+            applyTranslation(nodes.get(index), sources.get(index), text);
+            parts[index] = text;
+            received++;
+            return true;
+        }
+
+        @Override
+        public boolean onPartial(int index, CharSequence partial) {
+            if (keyed && index >= parts.length) return true;
+            String problem = guard.checkPartial(index, partial);
+            if (problem != null) {
+                System.err.println("  ! Обрыв генерации: " + problem);
+                return false;
+            }
+            return true;
+        }
+
+        /** Что пришло: по id — всё полученное даже при обрыве; по порядку — null, если обрыв испортил пакет. */
+        List<String> parts(boolean aborted) {
+            if (keyed) return Arrays.asList(parts.clone());
+            // Обрыв из-за мусора после последнего сегмента не портит уже полученные части
+            if (aborted && (overflow || received != nodes.size())) return null;
+            return new ArrayList<>(Arrays.asList(parts).subList(0, received));
+        }
+    }
+
+    /** Перевод приходит без краевых пробелов — возвращаем их из оригинала, иначе слипаются соседние теги. */
+    static void applyTranslation(TextNode node, String source, String translation) {
+        int start = 0;
+        while (start < source.length() && Character.isWhitespace(source.charAt(start))) start++;
+        int end = source.length();
+        while (end > start && Character.isWhitespace(source.charAt(end - 1))) end--;
+        node.text(source.substring(0, start) + translation + source.substring(end));
+    }
+
+    private static String preview(String text) {
+        return text.substring(0, Math.min(text.length(), 100)).replace("\n", " ");
+    }
+
+    /** Всё, что нужно задачам одной книги: сервис, журнал, общий пул пакетов и подбор их размера. */
+    private static final class BookRun {
+        final TranslationBackend service;
+        final TranslationJournal journal;
+        final BookProgress progress;
+        final AdaptiveBatcher batcher;
+        // Пакетов книги в работе не больше двух на слот: следующий уже ждёт, когда освободится сервер,
+        // а деление пополам и повторы не стоят в очереди за всей книгой
+        final OrderedWindow window;
+        // Какая глава сейчас раскладывается на пакеты (в режиме частичной книги — по одной, в порядке чтения)
+        final OrderedWindow scanning = new OrderedWindow(1);
+        // Запросы в работе — чтобы оборвать их, если книгу остановили
+        final Set<CompletableFuture<?>> requests = ConcurrentHashMap.newKeySet();
+        // Перевод каждого уникального сегмента книги: первый пакет с сегментом его заполняет, повторы ждут.
+        // null — перевести не удалось; такая запись удаляется, и следующая глава попробует снова
+        final Map<String, CompletableFuture<String>> translations = new ConcurrentHashMap<>();
+        // Для отчёта; заполняются в потоке, который обходит книгу
+        String title;
+        int chapters;
+        int resumedChapters;
+
+        BookRun(TranslationBackend service, TranslationJournal journal, BookProgress progress) {
+            this.service = service;
+            this.journal = journal;
+            this.progress = progress;
+            this.batcher = AdaptiveBatcher.forService(service);
+            this.window = new OrderedWindow(Math.max(1, service.getParallelism()) * 2);
         }
+
+        void track(CompletableFuture<?> request) {
+            requests.add(request);
+            request.whenComplete((result, error) -> requests.remove(request));
+        }
+
+        void cancelRequests() {
+            for (CompletableFuture<?> request : requests) request.cancel(true);
+        }
+
+        void settle(String key, String translation) {
+            CompletableFuture<String> future = translations.get(key);
+            if (future != null) settle(key, future, translation);
+        }
+
+        void settle(String key, CompletableFuture<String> future, String translation) {
+            if (translation != null) {
+                future.complete(translation);
+            } else if (future.complete(null)) {
+                translations.remove(key, future);
+            }
+        }
+    }
+
+    /** Разбор главы с настройками вывода, которые сохраняют XHTML при записи обратно. */
+    static Document parseXhtml(String xhtml) {
+        Document doc = Jsoup.parse(xhtml);
+        doc.outputSettings().syntax(Document.OutputSettings.Syntax.xml).escapeMode(Entities.EscapeMode.xhtml).prettyPrint(false);
+        return doc;
+    }
+
+    static List<TextNode> collectNodes(Node root) {
+        List<TextNode> list = new ArrayList<>();
+        collectNodes(root, list);
+        return list;
     }
 
-    private void collectNodes(Node node, List<TextNode> list) {
+    private static void collectNodes(Node node, List<TextNode> list) {
         if (node instanceof TextNode) {
             list.add((TextNode) node);
         } else {
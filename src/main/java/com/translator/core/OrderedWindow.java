@@ -0,0 +1,38 @@
+package com.translator.core;
+
+import java.util.PriorityQueue;
+
+/**
+ * Окно пакетов книги: как {@link java.util.concurrent.Semaphore}, но освободившееся место
+ * достаётся ожидающему с наименьшим приоритетом, а при равных — пришедшему раньше.
+ * Приоритет — номер главы в spine: пакеты ранних глав не стоят за пакетами поздних.
+ */
+final class OrderedWindow {
+
+    private final PriorityQueue<Long> waiting = new PriorityQueue<>();
+    private int permits;
+    private long arrivals;
+
+    OrderedWindow(int permits) {
+        this.permits = permits;
+    }
+
+    synchronized void acquire(int priority) throws InterruptedException {
+        // Старшие биты — приоритет, младшие — порядок прихода
+        Long ticket = ((long) priority << 32) | (arrivals++ & 0xFFFFFFFFL);
+        waiting.add(ticket);
+        try {
+            while (permits == 0 || !ticket.equals(waiting.peek())) wait();
+            permits--;
+        } finally {
+            waiting.remove(ticket);
+            // Следующий в очереди мог ждать только того, чтобы мы ушли из её головы
+            notifyAll();
+        }
+    }
+
+    synchronized void release() {
+        permits++;
+        notifyAll();
+    }
+}
@@ -0,0 +1,44 @@
+package com.translator.core;
+
+/** Итог обработки одной книги: сколько глав переведено, взято из журнала и упало. */
+public class ProcessReport {
+
+    private final String title;
+    private final int chapters;
+    private final int resumedChapters;
+    private final int failedChapters;
+    private final long elapsedMillis;
+
+    public ProcessReport(String title, int chapters, int resumedChapters, int failedChapters, long elapsedMillis) {
+        this.title = title;
+        this.chapters = chapters;
+        this.resumedChapters = resumedChapters;
+        this.failedChapters = failedChapters;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public int getChapters() {
+        return chapters;
+    }
+
+    public int getResumedChapters() {
+        return resumedChapters;
+    }
+
+    public int getFailedChapters() {
+        return failedChapters;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /** Все главы переведены — журнал удалён, повторный запуск не нужен. */
+    public boolean isComplete() {
+        return failedChapters == 0;
+    }
+}
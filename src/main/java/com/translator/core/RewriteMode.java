@@ -0,0 +1,26 @@
+package com.translator.core;
+
+import com.translator.config.AppConfig;
+
+/**
+ * Как глава разбирается и собирается обратно ({@code chapter.rewrite}).
+ * JSOUP — полный DOM и {@code outerHtml()}: Jsoup нормализует разметку, сущности и пробелы.
+ * SPLICE — {@link XhtmlSplicer}: один проход по байтам без DOM, перевод вклеивается на место
+ * исходного текста, остальная разметка остаётся байт в байт. Главы не в UTF-8 всё равно идут через Jsoup.
+ */
+public enum RewriteMode {
+    JSOUP,
+    SPLICE;
+
+    public static RewriteMode fromConfig(AppConfig config) {
+        String name = config.getString("chapter.rewrite", "jsoup");
+        switch (name.toLowerCase()) {
+            case "jsoup":
+                return JSOUP;
+            case "splice":
+                return SPLICE;
+            default:
+                throw new IllegalArgumentException("Неизвестный chapter.rewrite: " + name + " (ожидается jsoup или splice)");
+        }
+    }
+}
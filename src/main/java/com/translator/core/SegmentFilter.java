@@ -0,0 +1,82 @@
+package com.translator.core;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Сегменты, которые модели отправлять незачем: без букв ("* * *", "12", "— 3 —"),
+ * римские номера глав, буквицы, адреса и почта, текст внутри code/pre и т.п.
+ * Такие узлы остаются в книге как есть.
+ *
+ * <p>Римский номер узнаётся только по месту: единственный текст заголовка ({@code <h2>XIV</h2>})
+ * или отдельный маркер с точкой ({@code <p>IV.</p>}). Иначе "MIX", "LIV" или местоимение "I" в тексте
+ * остались бы без перевода.
+ */
+final class SegmentFilter {
+
+    private static final Set<String> CODE_TAGS = Set.of("code", "pre", "kbd", "samp", "var", "tt");
+    private static final Set<String> HEADING_TAGS = Set.of("h1", "h2", "h3", "h4", "h5", "h6");
+    // Номера до 399: D и M в номерах глав не встречаются, зато встречаются в словах ("MIX", "DC", "MD")
+    private static final Pattern ROMAN_NUMERAL =
+            Pattern.compile("(?=[CLXVI])C{0,3}(X[CL]|L?X{0,3})(I[XV]|V?I{0,3})\\.?");
+    private static final Pattern URL_OR_EMAIL =
+            Pattern.compile("(?i)(https?://|ftp://|www\\.)\\S+|[\\w.+-]+@[\\w-]+(\\.[\\w-]+)+");
+
+    private SegmentFilter() {
+    }
+
+    static boolean needsTranslation(TextNode node, String text) {
+        String stripped = text.strip();
+        if (stripped.isEmpty() || !containsLetter(stripped)) return false;
+        // Одна буква — слово ("I", "a"), если это не буквица перед остатком слова
+        if (stripped.length() == 1 && isDropCap(node)) return false;
+        if (isNumberMarker(node, stripped)) return false;
+        if (URL_OR_EMAIL.matcher(stripped).matches()) return false;
+        return !insideCode(node);
+    }
+
+    private static boolean isNumberMarker(TextNode node, String stripped) {
+        if (!ROMAN_NUMERAL.matcher(stripped).matches()) return false;
+        Element parent = node.parent() instanceof Element ? (Element) node.parent() : null;
+        // Узел без родителя (разбор без DOM) вне заголовка: решает только точка
+        if (parent == null) return stripped.endsWith(".");
+        for (Node sibling : parent.childNodes()) {
+            if (sibling != node && !(sibling instanceof TextNode && ((TextNode) sibling).isBlank())) return false;
+        }
+        return stripped.endsWith(".") || HEADING_TAGS.contains(parent.normalName());
+    }
+
+    /** Буквица: сразу за узлом в том же блоке идёт продолжение слова ({@code <span>T</span>he}). */
+    private static boolean isDropCap(TextNode node) {
+        Node current = node;
+        while (current.nextSibling() == null && current.parent() instanceof Element
+                && !((Element) current.parent()).isBlock()) {
+            current = current.parent();
+        }
+        Node next = current.nextSibling();
+        String following = next instanceof TextNode ? ((TextNode) next).getWholeText()
+                : next instanceof Element ? ((Element) next).wholeText() : "";
+        return !following.isEmpty() && Character.isLetter(following.charAt(0));
+    }
+
+    private static boolean containsLetter(String text) {
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            if (Character.isLetter(codePoint)) return true;
+            i += Character.charCount(codePoint);
+        }
+        return false;
+    }
+
+    private static boolean insideCode(TextNode node) {
+        for (Element parent = node.parent() instanceof Element ? (Element) node.parent() : null;
+             parent != null; parent = parent.parent()) {
+            if (CODE_TAGS.contains(parent.normalName())) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,56 @@
+package com.translator.core;
+
+/**
+ * Признаки того, что потоковая генерация пошла вразнос и её пора обрывать:
+ * сегментов больше, чем отправлено; сегмент несоразмерно длиннее оригинала
+ * (модель потеряла разделители или болтает); хвост текста зациклился.
+ */
+class StreamGuard {
+
+    private static final int REPEAT_WINDOW = 240;
+    private static final int MAX_PERIOD = 60;
+    private static final int CHECK_STEP = 64;
+
+    private final int[] sourceLengths;
+    private int lastCheckedLength;
+
+    StreamGuard(int[] sourceLengths) {
+        this.sourceLengths = sourceLengths;
+    }
+
+    /** Причина обрыва или null, если всё в порядке. */
+    String checkSegment(int index) {
+        if (index >= sourceLengths.length) {
+            return "сегментов больше, чем отправлено (" + sourceLengths.length + ")";
+        }
+        lastCheckedLength = 0;
+        return null;
+    }
+
+    String checkPartial(int index, CharSequence partial) {
+        if (index >= sourceLengths.length) {
+            return partial.toString().isBlank() ? null : "текст после последнего сегмента";
+        }
+        int limit = sourceLengths[index] * 4 + 200;
+        if (partial.length() > limit) {
+            return "сегмент #" + index + " длиннее оригинала в " + partial.length() / Math.max(1, sourceLengths[index]) + " раз";
+        }
+        if (partial.length() - lastCheckedLength >= CHECK_STEP) {
+            lastCheckedLength = partial.length();
+            if (isLooping(partial)) return "зацикливание в сегменте #" + index;
+        }
+        return null;
+    }
+
+    /** Последние REPEAT_WINDOW символов — повтор одного куска длиной до MAX_PERIOD. */
+    static boolean isLooping(CharSequence text) {
+        int n = text.length();
+        if (n < REPEAT_WINDOW + MAX_PERIOD) return false;
+        for (int period = 1; period <= MAX_PERIOD; period++) {
+            int i = 1;
+            while (i <= REPEAT_WINDOW && text.charAt(n - i) == text.charAt(n - i - period)) i++;
+            if (i > REPEAT_WINDOW) return true;
+        }
+        return false;
+    }
+}
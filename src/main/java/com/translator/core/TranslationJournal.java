@@ -0,0 +1,215 @@
+package com.translator.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Журнал прогресса рядом с выходным файлом (JSON-строки, только дозапись).
+ * Каждая готовая глава и каждый выровненный пакет пишутся сразу, поэтому
+ * после сбоя перезапуск теряет не больше одного пакета.
+ * XHTML готовых глав в памяти не держится: журнал помнит только, где лежит строка главы,
+ * и перечитывает её с диска, когда глава понадобится при продолжении.
+ */
+public class TranslationJournal implements Closeable {
+
+    private final Path file;
+    private final Gson gson = new Gson();
+    // href готовой главы → её строка в файле
+    private final Map<String, Line> chapters = new HashMap<>();
+    private final Map<String, Map<String, String>> segments = new HashMap<>();
+    private FileOutputStream out;
+    // Длина файла — смещение следующей записи
+    private long size;
+
+    private TranslationJournal(Path file) {
+        this.file = file;
+    }
+
+    public static TranslationJournal open(Path file) throws IOException {
+        TranslationJournal journal = new TranslationJournal(file);
+        if (Files.isRegularFile(file)) {
+            journal.load();
+            // Без этого первая новая запись склеилась бы с оборванной строкой и пропала при следующем запуске
+            journal.size = trimTornLine(file);
+        }
+        journal.out = new FileOutputStream(file.toFile(), true);
+        return journal;
+    }
+
+    public static Path pathFor(String outputPath) {
+        return Path.of(outputPath + ".journal");
+    }
+
+    /** XHTML готовой главы, прочитанный из файла журнала, или null, если глава не готова. */
+    public synchronized String completedChapter(String href) throws IOException {
+        Line line = chapters.get(href);
+        if (line == null) return null;
+        ByteBuffer buffer = ByteBuffer.allocate(line.length);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, line.offset + buffer.position()) < 0) {
+                    throw new IOException("Журнал " + file + " короче записи главы " + href);
+                }
+            }
+        }
+        JsonObject entry = gson.fromJson(new String(buffer.array(), StandardCharsets.UTF_8), JsonObject.class);
+        return entry.get("xhtml").getAsString();
+    }
+
+    public synchronized String completedSegment(String href, String source) {
+        Map<String, String> done = segments.get(href);
+        return done == null ? null : done.get(source);
+    }
+
+    public synchronized int completedChapterCount() {
+        return chapters.size();
+    }
+
+    public synchronized void recordBatch(String href, List<String> sources, List<String> translations) {
+        JsonObject entry = new JsonObject();
+        entry.addProperty("href", href);
+        JsonArray src = new JsonArray();
+        JsonArray dst = new JsonArray();
+        for (int i = 0; i < sources.size(); i++) {
+            src.add(sources.get(i));
+            dst.add(translations.get(i));
+            segments.computeIfAbsent(href, k -> new HashMap<>()).put(sources.get(i), translations.get(i));
+        }
+        entry.add("src", src);
+        entry.add("dst", dst);
+        append(entry);
+    }
+
+    public synchronized void recordChapter(String href, String xhtml) {
+        JsonObject entry = new JsonObject();
+        entry.addProperty("href", href);
+        entry.addProperty("xhtml", xhtml);
+        Line line = append(entry);
+        if (line != null) chapters.put(href, line);
+        // Пакеты готовой главы больше не нужны
+        segments.remove(href);
+    }
+
+    /** Книга успешно записана — журнал больше не нужен. */
+    public synchronized void finish() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /** Дописывает запись и возвращает её место в файле; null — записать не удалось. */
+    private Line append(JsonObject entry) {
+        byte[] bytes = (gson.toJson(entry) + '\n').getBytes(StandardCharsets.UTF_8);
+        try {
+            out.write(bytes);
+            out.getFD().sync();
+        } catch (IOException e) {
+            System.err.println("Журнал: не удалось записать " + file + ": " + e.getMessage());
+            return null;
+        }
+        Line line = new Line(size, bytes.length - 1);
+        size += bytes.length;
+        return line;
+    }
+
+    /** Обрезает файл после последнего перевода строки — остаток не дописан при сбое. Возвращает новую длину. */
+    private static long trimTornLine(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            long end = channel.size();
+            while (end > 0) {
+                long start = Math.max(0, end - buffer.capacity());
+                buffer.clear().limit((int) (end - start));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, start + buffer.position()) < 0) break;
+                }
+                for (int i = buffer.position() - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        channel.truncate(start + i + 1);
+                        return start + i + 1;
+                    }
+                }
+                end = start;
+            }
+            channel.truncate(0);
+            return 0;
+        }
+    }
+
+    private void load() throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            long offset = 0;
+            int b;
+            while ((b = in.read()) >= 0) {
+                if (b != '\n') {
+                    bytes.write(b);
+                    continue;
+                }
+                // Строка без перевода в конце файла оборвана при сбое и до сюда не доходит
+                String line = bytes.toString(StandardCharsets.UTF_8);
+                Line position = new Line(offset, bytes.size());
+                offset += bytes.size() + 1;
+                bytes.reset();
+                if (line.isBlank()) continue;
+                JsonObject entry;
+                try {
+                    entry = gson.fromJson(line, JsonObject.class);
+                } catch (JsonParseException e) {
+                    continue;
+                }
+                if (entry == null || !entry.has("href")) continue;
+                String href = entry.get("href").getAsString();
+                if (entry.has("xhtml")) {
+                    chapters.put(href, position);
+                    segments.remove(href);
+                } else if (entry.has("src") && entry.has("dst")) {
+                    JsonArray src = entry.getAsJsonArray("src");
+                    JsonArray dst = entry.getAsJsonArray("dst");
+                    Map<String, String> done = segments.computeIfAbsent(href, k -> new HashMap<>());
+                    for (int i = 0; i < Math.min(src.size(), dst.size()); i++) {
+                        done.put(src.get(i).getAsString(), dst.get(i).getAsString());
+                    }
+                }
+            }
+        }
+        System.out.println(">>> Найден журнал " + file.getFileName() + ": готово глав " + chapters.size()
+                + ", незавершённых глав с пакетами " + segments.size());
+    }
+
+    /** Место строки в файле журнала, без перевода строки. */
+    private static final class Line {
+        final long offset;
+        final int length;
+
+        Line(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
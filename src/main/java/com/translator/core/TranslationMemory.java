@@ -0,0 +1,137 @@
+package com.translator.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Память переводов: сегмент -> перевод, ключ = SHA-256(модель + промпт + текст).
+ * Два уровня: LRU в памяти и каталог на диске (общий для всех книг и запусков).
+ */
+public class TranslationMemory {
+
+    private static final int DEFAULT_LRU_SIZE = 20_000;
+
+    private final Path dir;
+    private final Map<String, String> lru;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public TranslationMemory(Path dir, int lruSize) {
+        this.dir = dir;
+        this.lru = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > lruSize;
+            }
+        };
+    }
+
+    public static TranslationMemory openDefault() {
+        return new TranslationMemory(Paths.get(System.getProperty("user.home"), ".epub-translator", "memory"), DEFAULT_LRU_SIZE);
+    }
+
+    public String lookup(String segment, String model, String prompt) {
+        String key = key(segment, model, prompt);
+        String cached;
+        synchronized (lru) {
+            cached = lru.get(key);
+        }
+        if (cached == null) {
+            cached = readFromDisk(key);
+            if (cached != null) {
+                synchronized (lru) {
+                    lru.put(key, cached);
+                }
+            }
+        }
+        if (cached != null) hits.incrementAndGet();
+        else misses.incrementAndGet();
+        return cached;
+    }
+
+    /** Есть ли перевод: без чтения файла и без счёта попаданий — для пробного прогона. */
+    public boolean contains(String segment, String model, String prompt) {
+        String key = key(segment, model, prompt);
+        synchronized (lru) {
+            if (lru.containsKey(key)) return true;
+        }
+        return Files.isRegularFile(fileFor(key));
+    }
+
+    public void store(String segment, String model, String prompt, String translation) {
+        if (translation == null || translation.isEmpty()) return;
+        String key = key(segment, model, prompt);
+        synchronized (lru) {
+            lru.put(key, translation);
+        }
+        writeToDisk(key, translation);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public String stats() {
+        long h = hits.get();
+        long total = h + misses.get();
+        long percent = total == 0 ? 0 : h * 100 / total;
+        return "попаданий " + h + ", промахов " + misses.get() + " (" + percent + "% из кэша)";
+    }
+
+    private String readFromDisk(String key) {
+        Path file = fileFor(key);
+        if (!Files.isRegularFile(file)) return null;
+        try {
+            return Files.readString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Память переводов: не удалось прочитать " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, String translation) {
+        Path file = fileFor(key);
+        try {
+            Files.createDirectories(file.getParent());
+            // Пишем во временный файл и переименовываем, чтобы параллельные запуски не видели полузаписанных данных
+            Path tmp = Files.createTempFile(file.getParent(), key, ".tmp");
+            Files.writeString(tmp, translation, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Память переводов: не удалось сохранить " + file + ": " + e.getMessage());
+        }
+    }
+
+    private Path fileFor(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key + ".txt");
+    }
+
+    static String key(String segment, String model, String prompt) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(prompt.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            byte[] hash = digest.digest(segment.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.translator.core;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.Parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Глава без DOM. Потоковый проход по байтам XHTML находит текстовые отрезки между тегами внутри body
+ * и запоминает их границы; каждому отрезку достаётся отдельный {@link TextNode} без родителя (кроме
+ * единственного текста заголовка), с которым работает обычный конвейер пакетов. {@link #splice()} вклеивает изменённый текст на место отрезка
+ * с экранированием, а всё остальное — теги, сущности, пробелы, комментарии — копирует байт в байт.
+ *
+ * <p>Разбор идёт по байтам: в UTF-8 байты {@code < > & "} не встречаются внутри многобайтовых символов.
+ * Текст внутри code/pre, script и style не попадает в отрезки вовсе.
+ */
+final class XhtmlSplicer {
+
+    private static final String BODY = "body";
+    private static final Set<String> CODE_TAGS = Set.of("code", "pre", "kbd", "samp", "var", "tt");
+    private static final Set<String> RAW_TEXT_TAGS = Set.of("script", "style");
+    private static final Set<String> HEADING_TAGS = Set.of("h1", "h2", "h3", "h4", "h5", "h6");
+    // Имена, от которых что-то зависит; остальные теги даже не превращаются в строки
+    private static final String[] KNOWN_TAGS = {BODY, "code", "pre", "kbd", "samp", "var", "tt", "script", "style",
+            "h1", "h2", "h3", "h4", "h5", "h6"};
+
+    private final byte[] data;
+    private final List<Run> runs = new ArrayList<>();
+
+    private XhtmlSplicer(byte[] data) {
+        this.data = data;
+    }
+
+    /** Разбор главы; null, если она не в UTF-8 — такую разбирает Jsoup. */
+    static XhtmlSplicer parse(byte[] data) {
+        if (!isUtf8(data)) return null;
+        XhtmlSplicer splicer = new XhtmlSplicer(data);
+        splicer.tokenize();
+        return splicer;
+    }
+
+    /** Текстовые узлы отрезков в порядке следования; узел единственного текста заголовка лежит в элементе h1–h6. */
+    List<TextNode> nodes() {
+        List<TextNode> nodes = new ArrayList<>(runs.size());
+        for (Run run : runs) nodes.add(run.node);
+        return nodes;
+    }
+
+    /** Глава с переводом: изменённые отрезки заменены, остальное скопировано как было. */
+    byte[] splice() {
+        // Сначала замены и точный размер — результат собирается в одном массиве без доращивания буфера
+        byte[][] replacements = new byte[runs.size()][];
+        int size = data.length;
+        for (int i = 0; i < runs.size(); i++) {
+            Run run = runs.get(i);
+            String text = run.node.getWholeText();
+            if (text.equals(run.source)) continue;
+            replacements[i] = escape(text).getBytes(StandardCharsets.UTF_8);
+            size += replacements[i].length - (run.end - run.start);
+        }
+        byte[] out = new byte[size];
+        int from = 0;
+        int to = 0;
+        for (int i = 0; i < runs.size(); i++) {
+            if (replacements[i] == null) continue;
+            Run run = runs.get(i);
+            System.arraycopy(data, from, out, to, run.start - from);
+            to += run.start - from;
+            System.arraycopy(replacements[i], 0, out, to, replacements[i].length);
+            to += replacements[i].length;
+            from = run.end;
+        }
+        System.arraycopy(data, from, out, to, data.length - from);
+        return out;
+    }
+
+    private void tokenize() {
+        boolean inBody = false;
+        int codeDepth = 0;
+        // Открытый заголовок: с какого отрезка он начался и была ли внутри другая разметка
+        String heading = null;
+        int headingRuns = 0;
+        boolean headingMarkup = false;
+        int textStart = 0;
+        int i = 0;
+        while (i < data.length) {
+            if (data[i] != '<' || i + 1 >= data.length) {
+                i++;
+                continue;
+            }
+            byte next = data[i + 1];
+            int markupEnd;
+            if (startsWith(i, "<!--")) {
+                markupEnd = indexOf(i + 4, "-->");
+            } else if (startsWith(i, "<![CDATA[")) {
+                markupEnd = indexOf(i + 9, "]]>");
+            } else if (next == '?') {
+                markupEnd = indexOf(i + 2, "?>");
+            } else if (next == '!') {
+                markupEnd = indexOf(i + 2, ">");
+            } else if (next == '/' || isLetter(next)) {
+                markupEnd = tagEnd(i);
+            } else {
+                // Одиночный '<' в тексте — часть текста
+                i++;
+                continue;
+            }
+
+            if (inBody && codeDepth == 0) addRun(textStart, i);
+            if (markupEnd < 0) return; // незакрытая разметка до конца файла — дальше текста нет
+
+            boolean isTag = next == '/' || isLetter(next);
+            String name = isTag ? knownTag(next == '/' ? i + 2 : i + 1) : null;
+            if (heading != null && !heading.equals(name)) headingMarkup = true;
+            if (isTag) {
+                boolean closing = next == '/';
+                boolean selfClosing = !closing && data[markupEnd - 2] == '/';
+                if (name != null && HEADING_TAGS.contains(name)) {
+                    if (!closing && !selfClosing) {
+                        heading = name;
+                        headingRuns = runs.size();
+                        headingMarkup = false;
+                    } else if (closing && name.equals(heading)) {
+                        // Единственный текст заголовка — как в DOM, чтобы SegmentFilter узнал номер главы
+                        if (!headingMarkup && runs.size() == headingRuns + 1) {
+                            new Element(heading).appendChild(runs.get(headingRuns).node);
+                        }
+                        heading = null;
+                    }
+                } else if (BODY.equals(name)) {
+                    inBody = !closing && !selfClosing;
+                } else if (name != null && CODE_TAGS.contains(name) && !selfClosing) {
+                    codeDepth = closing ? Math.max(0, codeDepth - 1) : codeDepth + 1;
+                } else if (name != null && RAW_TEXT_TAGS.contains(name) && !closing && !selfClosing) {
+                    // Содержимое script/style — не текст: пропускаем до закрывающего тега
+                    int close = indexOfIgnoreCase(markupEnd, "</" + name);
+                    if (close < 0) return;
+                    markupEnd = tagEnd(close);
+                    if (markupEnd < 0) return;
+                }
+            }
+            i = markupEnd;
+            textStart = i;
+        }
+        if (inBody && codeDepth == 0) addRun(textStart, data.length);
+    }
+
+    private void addRun(int start, int end) {
+        boolean blank = true;
+        for (int i = start; i < end && blank; i++) {
+            byte b = data[i];
+            blank = b == ' ' || b == '\n' || b == '\r' || b == '\t';
+        }
+        if (blank) return;
+        String raw = new String(data, start, end - start, StandardCharsets.UTF_8);
+        String source = raw.indexOf('&') >= 0 ? Parser.unescapeEntities(raw, false) : raw;
+        runs.add(new Run(start, end, source));
+    }
+
+    /** Позиция после '>' тега; '>' внутри кавычек атрибутов не считается. -1 — тег не закрыт. */
+    private int tagEnd(int start) {
+        byte quote = 0;
+        for (int i = start + 1; i < data.length; i++) {
+            byte b = data[i];
+            if (quote != 0) {
+                if (b == quote) quote = 0;
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Имя тега из {@link #KNOWN_TAGS} (без префикса пространства имён, без учёта регистра) или null. */
+    private String knownTag(int start) {
+        int end = start;
+        while (end < data.length && isNameChar(data[end])) {
+            if (data[end] == ':') start = end + 1;
+            end++;
+        }
+        for (String known : KNOWN_TAGS) {
+            if (known.length() != end - start) continue;
+            int j = 0;
+            while (j < known.length() && (data[start + j] | 0x20) == known.charAt(j)) j++;
+            if (j == known.length()) return known;
+        }
+        return null;
+    }
+
+    private static boolean isNameChar(byte b) {
+        return isLetter(b) || (b >= '0' && b <= '9') || b == ':' || b == '-' || b == '_' || b == '.';
+    }
+
+    private boolean startsWith(int start, String prefix) {
+        if (start + prefix.length() > data.length) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (data[start + i] != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /** Позиция после найденной строки или -1. */
+    private int indexOf(int from, String needle) {
+        for (int i = from; i + needle.length() <= data.length; i++) {
+            if (startsWith(i, needle)) return i + needle.length();
+        }
+        return -1;
+    }
+
+    private int indexOfIgnoreCase(int from, String needle) {
+        outer:
+        for (int i = from; i + needle.length() <= data.length; i++) {
+            for (int j = 0; j < needle.length(); j++) {
+                if (Character.toLowerCase((char) data[i + j]) != needle.charAt(j)) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static boolean isLetter(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    /** Кодировка из BOM и XML-декларации; без декларации XHTML — UTF-8. */
+    private static boolean isUtf8(byte[] data) {
+        if (data.length >= 2 && ((data[0] == (byte) 0xFE && data[1] == (byte) 0xFF)
+                || (data[0] == (byte) 0xFF && data[1] == (byte) 0xFE))) {
+            return false;
+        }
+        int offset = data.length >= 3 && data[0] == (byte) 0xEF && data[1] == (byte) 0xBB && data[2] == (byte) 0xBF ? 3 : 0;
+        String head = new String(data, offset, Math.min(data.length - offset, 200), StandardCharsets.ISO_8859_1);
+        if (!head.startsWith("<?xml")) return true;
+        int declarationEnd = head.indexOf("?>");
+        String declaration = (declarationEnd < 0 ? head : head.substring(0, declarationEnd)).toLowerCase(Locale.ROOT);
+        int encoding = declaration.indexOf("encoding");
+        if (encoding < 0) return true;
+        String value = declaration.substring(encoding + 8).replaceAll("[\\s=\"']", " ").trim();
+        return value.startsWith("utf-8") || value.startsWith("utf8");
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String entity = c == '&' ? "&amp;" : c == '<' ? "&lt;" : c == '>' ? "&gt;" : null;
+            if (entity == null) {
+                if (escaped != null) escaped.append(c);
+                continue;
+            }
+            if (escaped == null) escaped = new StringBuilder(text.length() + 16).append(text, 0, i);
+            escaped.append(entity);
+        }
+        return escaped == null ? text : escaped.toString();
+    }
+
+    /** Текстовый отрезок: байты [start, end) оригинала и его текст с раскрытыми сущностями. */
+    private static final class Run {
+        final int start;
+        final int end;
+        final String source;
+        final TextNode node;
+
+        Run(int start, int end, String source) {
+            this.start = start;
+            this.end = end;
+            this.source = source;
+            this.node = new TextNode(source);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.translator.epub;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipException;
+
+/**
+ * Оглавление книги без загрузки содержимого: путь к OPF, заголовок и список
+ * XHTML-документов — сначала в порядке spine, затем остальные из manifest.
+ */
+public class EpubPackage {
+
+    private final String title;
+    private final List<Chapter> chapters;
+
+    private EpubPackage(String title, List<Chapter> chapters) {
+        this.title = title;
+        this.chapters = chapters;
+    }
+
+    public static EpubPackage read(ZipArchive archive) throws IOException {
+        ZipArchive.Entry containerEntry = archive.getEntry("META-INF/container.xml");
+        if (containerEntry == null) throw new ZipException("Нет META-INF/container.xml — это не EPUB");
+        Document container = parseXml(archive.readAll(containerEntry));
+        Element rootfile = first(container, "rootfiles", "rootfile");
+        if (rootfile == null || !rootfile.hasAttr("full-path")) throw new ZipException("В container.xml не указан OPF");
+        String opfPath = rootfile.attr("full-path");
+        ZipArchive.Entry opfEntry = archive.getEntry(opfPath);
+        if (opfEntry == null) throw new ZipException("Не найден " + opfPath);
+
+        Document opf = parseXml(archive.readAll(opfEntry));
+        String baseDir = opfPath.contains("/") ? opfPath.substring(0, opfPath.lastIndexOf('/') + 1) : "";
+
+        Map<String, Element> manifest = new HashMap<>();
+        List<Element> manifestOrder = new ArrayList<>();
+        for (Element item : all(opf, "manifest", "item")) {
+            manifest.put(item.attr("id"), item);
+            manifestOrder.add(item);
+        }
+
+        Set<Element> ordered = new LinkedHashSet<>();
+        for (Element itemref : all(opf, "spine", "itemref")) {
+            Element item = manifest.get(itemref.attr("idref"));
+            if (item != null) ordered.add(item);
+        }
+        ordered.addAll(manifestOrder);
+
+        List<Chapter> chapters = new ArrayList<>();
+        for (Element item : ordered) {
+            if (!item.attr("media-type").contains("html")) continue;
+            String path = resolve(baseDir, item.attr("href"));
+            ZipArchive.Entry entry = archive.getEntry(path);
+            if (entry == null) {
+                System.err.println("В manifest есть " + path + ", но в архиве его нет — пропускаю");
+                continue;
+            }
+            chapters.add(new Chapter(item.attr("href"), entry, chapters.size()));
+        }
+
+        Element titleElement = first(opf, "metadata", "title");
+        return new EpubPackage(titleElement != null ? titleElement.text() : opfPath, chapters);
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public List<Chapter> getChapters() {
+        return chapters;
+    }
+
+    private static Document parseXml(byte[] data) {
+        return Jsoup.parse(new String(data, StandardCharsets.UTF_8), "", Parser.xmlParser());
+    }
+
+    /**
+     * Элементы name внутри parent без учёта префикса: epublib и другие генераторы пишут
+     * {@code opf:item}, {@code opf:spine}. Селектор {@code *|item} в jsoup 1.16 с комбинатором {@code >}
+     * находит не все элементы, поэтому сравниваем имена сами.
+     */
+    private static List<Element> all(Document doc, String parent, String name) {
+        List<Element> result = new ArrayList<>();
+        for (Element element : doc.getAllElements()) {
+            if (localName(element).equals(name) && element.parent() != null && localName(element.parent()).equals(parent)) {
+                result.add(element);
+            }
+        }
+        return result;
+    }
+
+    private static Element first(Document doc, String parent, String name) {
+        List<Element> found = all(doc, parent, name);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    private static String localName(Element element) {
+        String tag = element.tagName();
+        return tag.substring(tag.indexOf(':') + 1);
+    }
+
+    private static String resolve(String baseDir, String href) {
+        String path = baseDir + URLDecoder.decode(href.split("#")[0].replace("+", "%2B"), StandardCharsets.UTF_8);
+        // Нормализуем "../" и "./"
+        List<String> parts = new ArrayList<>();
+        for (String part : path.split("/")) {
+            if (part.isEmpty() || part.equals(".")) continue;
+            if (part.equals("..")) {
+                if (!parts.isEmpty()) parts.remove(parts.size() - 1);
+            } else {
+                parts.add(part);
+            }
+        }
+        return String.join("/", parts);
+    }
+
+    /** XHTML-документ книги: href из manifest (для журнала) и запись архива. */
+    public static class Chapter {
+        private final String href;
+        private final ZipArchive.Entry entry;
+        private final int index;
+
+        Chapter(String href, ZipArchive.Entry entry, int index) {
+            this.href = href;
+            this.entry = entry;
+            this.index = index;
+        }
+
+        public String getHref() {
+            return href;
+        }
+
+        public ZipArchive.Entry getEntry() {
+            return entry;
+        }
+
+        /** Порядковый номер: spine идёт первым. */
+        public int getIndex() {
+            return index;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.translator.epub;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Читаемая книга, пока идёт перевод ({@code book_RU.partial.epub}). В начале в неё копируются все записи
+ * оригинала, готовые главы дописываются в конец и в каталоге заменяют оригинал. Главы копятся в памяти
+ * до публикации: она дописывает только их и новый центральный каталог поверх прежнего, поэтому между
+ * публикациями файл на диске не меняется и всегда заканчивается целым каталогом.
+ *
+ * <p>Ошибка записи не останавливает перевод: она пишется в лог, и частичная книга больше не обновляется.
+ */
+public class PartialEpub implements Closeable {
+
+    private final Path file;
+    private final RawZipWriter writer;
+    private final long intervalMillis;
+    // Готовые главы, которые ещё не в файле
+    private final List<Pending> pending = new ArrayList<>();
+    private long publishedAt;
+    private boolean broken;
+
+    public PartialEpub(Path file, long intervalMillis) throws IOException {
+        this.file = file;
+        this.writer = new RawZipWriter(file, true);
+        this.intervalMillis = intervalMillis;
+    }
+
+    /** {@code book_DE.epub -> book_DE.partial.epub}: суффикс языка остаётся тем же, что у выходной книги. */
+    public static Path pathFor(String outputPath) {
+        String base = outputPath.toLowerCase().endsWith(".epub") ? outputPath.substring(0, outputPath.length() - 5) : outputPath;
+        return Path.of(base + ".partial.epub");
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /** Запись оригинала как есть — только до первой публикации. */
+    public synchronized void copyRaw(ZipArchive source, ZipArchive.Entry entry) {
+        if (broken) return;
+        try {
+            writer.copyRaw(source, entry);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /** Запись из памяти — тоже только до первой публикации; потом главы идут через {@link #chapterDone}. */
+    public synchronized void put(String name, byte[] data, int dosTime, int dosDate) {
+        if (broken) return;
+        try {
+            writer.putDeflated(name, data, dosTime, dosDate);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Готовая глава. Книга публикуется сразу, если глава продлила непрерывное готовое начало книги
+     * (его можно читать подряд), иначе — когда с прошлого раза прошло не меньше интервала.
+     */
+    public synchronized void chapterDone(String name, byte[] data, int dosTime, int dosDate, boolean extendsPrefix) {
+        if (broken) return;
+        pending.add(new Pending(name, data, dosTime, dosDate));
+        if (extendsPrefix || System.currentTimeMillis() - publishedAt >= intervalMillis) publish();
+    }
+
+    /** Дописывает накопленные записи и каталог — файл на диске получает всё, что готово. */
+    public synchronized void publish() {
+        if (broken) return;
+        try {
+            for (Pending entry : pending) writer.putDeflated(entry.name, entry.data, entry.dosTime, entry.dosDate);
+            writer.snapshot();
+            publishedAt = System.currentTimeMillis();
+            if (!pending.isEmpty()) System.out.println(">>> Частичная книга обновлена (+" + pending.size() + " гл.): " + file.getFileName());
+            pending.clear();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    /** Книга переведена целиком — частичная больше не нужна. */
+    public void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    private void fail(IOException e) {
+        broken = true;
+        pending.clear();
+        System.err.println(">>> Частичная книга " + file.getFileName() + " больше не обновляется: " + e.getMessage());
+    }
+
+    private static final class Pending {
+        final String name;
+        final byte[] data;
+        final int dosTime;
+        final int dosDate;
+
+        Pending(String name, byte[] data, int dosTime, int dosDate) {
+            this.name = name;
+            this.data = data;
+            this.dosTime = dosTime;
+            this.dosDate = dosDate;
+        }
+    }
+}
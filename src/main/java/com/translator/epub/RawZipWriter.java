@@ -0,0 +1,238 @@
+package com.translator.epub;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Минимальный писатель ZIP: копирует записи из {@link ZipArchive} сжатыми байтами
+ * и добавляет новые записи из памяти. Методы синхронизированы — главы пишутся
+ * из разных потоков по мере готовности.
+ *
+ * <p>В режиме replaceable запись с уже занятым именем заменяет прежнюю в центральном каталоге
+ * (старые байты остаются в файле мёртвым грузом), а {@link #snapshot()} дописывает каталог,
+ * не закрывая архив: файл сразу читается, а следующая запись ложится поверх этого каталога.
+ */
+public class RawZipWriter implements Closeable {
+
+    private static final int UTF8_FLAG = 0x800;
+    private static final int DATA_DESCRIPTOR_FLAG = 0x08;
+
+    private final FileChannel channel;
+    private final OutputStream out;
+    private final boolean replaceable;
+    private final List<Written> written = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+    private long position;
+    private boolean finished;
+
+    public RawZipWriter(Path file) throws IOException {
+        this(file, false);
+    }
+
+    public RawZipWriter(Path file, boolean replaceable) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+        this.replaceable = replaceable;
+    }
+
+    /** Копирует запись без распаковки: локальный заголовок пишется заново, данные — байт в байт. */
+    public synchronized void copyRaw(ZipArchive source, ZipArchive.Entry entry) throws IOException {
+        Written w = new Written(entry.nameBytes, entry.flags & ~DATA_DESCRIPTOR_FLAG, entry.method,
+                entry.dosTime, entry.dosDate, entry.crc, entry.compressedSize, entry.size);
+        writeLocalHeader(w);
+        try (InputStream raw = source.openRaw(entry)) {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = raw.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+                position += n;
+            }
+        }
+    }
+
+    public synchronized void putStored(String name, byte[] data, int dosTime, int dosDate) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        Written w = new Written(name.getBytes(StandardCharsets.UTF_8), UTF8_FLAG, ZipArchive.METHOD_STORED,
+                dosTime, dosDate, crc.getValue(), data.length, data.length);
+        writeLocalHeader(w);
+        out.write(data);
+        position += data.length;
+    }
+
+    public void putDeflated(String name, byte[] data, int dosTime, int dosDate) throws IOException {
+        // Сжимаем вне блокировки, чтобы главы из разных потоков не ждали друг друга
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        byte[] compressed;
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+            byte[] chunk = new byte[16 * 1024];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                buffer.write(chunk, 0, n);
+            }
+            compressed = buffer.toByteArray();
+        } finally {
+            deflater.end();
+        }
+        synchronized (this) {
+            Written w = new Written(name.getBytes(StandardCharsets.UTF_8), UTF8_FLAG, ZipArchive.METHOD_DEFLATED,
+                    dosTime, dosDate, crc.getValue(), compressed.length, data.length);
+            writeLocalHeader(w);
+            out.write(compressed);
+            position += compressed.length;
+        }
+    }
+
+    public synchronized boolean contains(String name) {
+        return names.contains(name);
+    }
+
+    /** Пишет центральный каталог. После этого архив готов. */
+    public synchronized void finish() throws IOException {
+        if (finished) return;
+        finished = true;
+        writeCentralDirectory();
+    }
+
+    /**
+     * Промежуточный каталог: архив на диске становится целым со всеми записями на этот момент.
+     * Следующая запись затрёт каталог, поэтому пока она пишется, файл не читается: пишущий сам
+     * решает, когда дописывать (см. {@link PartialEpub} — записи копятся и пишутся вместе с каталогом).
+     */
+    public synchronized void snapshot() throws IOException {
+        if (finished) throw new IOException("Архив уже закрыт");
+        long cdStart = position;
+        writeCentralDirectory();
+        channel.position(cdStart);
+        position = cdStart;
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        if (written.size() >= 0xFFFF || position >= 0xFFFFFFFFL) {
+            throw new IOException("Архив слишком большой для ZIP без ZIP64");
+        }
+        long cdStart = position;
+        for (Written w : written) {
+            ByteBuffer header = ByteBuffer.allocate(46).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(ZipArchive.CENTRAL_HEADER);
+            header.putShort((short) 20);
+            header.putShort((short) 20);
+            header.putShort((short) w.flags);
+            header.putShort((short) w.method);
+            header.putShort((short) w.dosTime);
+            header.putShort((short) w.dosDate);
+            header.putInt((int) w.crc);
+            header.putInt((int) w.compressedSize);
+            header.putInt((int) w.size);
+            header.putShort((short) w.name.length);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putInt(0);
+            header.putInt((int) w.offset);
+            out.write(header.array());
+            out.write(w.name);
+            position += 46 + w.name.length;
+        }
+        ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(ZipArchive.END_OF_CENTRAL_DIRECTORY);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) written.size());
+        end.putShort((short) written.size());
+        end.putInt((int) (position - cdStart));
+        end.putInt((int) cdStart);
+        end.putShort((short) 0);
+        out.write(end.array());
+        out.flush();
+        // Прежний каталог мог быть длиннее — его хвост после конца архива сбил бы читателей
+        channel.truncate(channel.position());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private void writeLocalHeader(Written w) throws IOException {
+        if (finished) throw new IOException("Архив уже закрыт");
+        String name = new String(w.name, StandardCharsets.UTF_8);
+        int replaced = -1;
+        if (!names.add(name)) {
+            if (!replaceable) throw new IOException("Запись уже есть в архиве: " + name);
+            for (int i = 0; i < written.size() && replaced < 0; i++) {
+                if (Arrays.equals(written.get(i).name, w.name)) replaced = i;
+            }
+        }
+        w.offset = position;
+        ByteBuffer header = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(ZipArchive.LOCAL_HEADER);
+        header.putShort((short) 20);
+        header.putShort((short) w.flags);
+        header.putShort((short) w.method);
+        header.putShort((short) w.dosTime);
+        header.putShort((short) w.dosDate);
+        header.putInt((int) w.crc);
+        header.putInt((int) w.compressedSize);
+        header.putInt((int) w.size);
+        header.putShort((short) w.name.length);
+        header.putShort((short) 0);
+        out.write(header.array());
+        out.write(w.name);
+        position += 30 + w.name.length;
+        // Замена остаётся на месте прежней записи: порядок в каталоге не меняется
+        if (replaced >= 0) {
+            written.set(replaced, w);
+        } else {
+            written.add(w);
+        }
+    }
+
+    private static final class Written {
+        final byte[] name;
+        final int flags;
+        final int method;
+        final int dosTime;
+        final int dosDate;
+        final long crc;
+        final long compressedSize;
+        final long size;
+        long offset;
+
+        Written(byte[] name, int flags, int method, int dosTime, int dosDate, long crc, long compressedSize, long size) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.dosDate = dosDate;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.translator.epub;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Чтение ZIP через центральный каталог без распаковки всего архива.
+ * Записи можно читать потоком или отдавать в {@link RawZipWriter} как есть —
+ * сжатыми байтами, без распаковки и повторного сжатия.
+ * ZIP64 не поддерживается (для EPUB он не встречается на практике).
+ */
+public class ZipArchive implements Closeable {
+
+    static final int LOCAL_HEADER = 0x04034b50;
+    static final int CENTRAL_HEADER = 0x02014b50;
+    static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    static final int METHOD_STORED = 0;
+    static final int METHOD_DEFLATED = 8;
+
+    private final FileChannel channel;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    private ZipArchive(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    public static ZipArchive open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        ZipArchive archive = new ZipArchive(channel);
+        try {
+            archive.readCentralDirectory();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return archive;
+    }
+
+    /** Записи в порядке центрального каталога. */
+    public List<Entry> entries() {
+        return Collections.unmodifiableList(new ArrayList<>(entries.values()));
+    }
+
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    public InputStream openStream(Entry entry) throws IOException {
+        InputStream raw = new RegionInputStream(channel, dataOffset(entry), entry.compressedSize);
+        if (entry.method == METHOD_STORED) return raw;
+        if (entry.method == METHOD_DEFLATED) {
+            // Inflater в режиме nowrap ждёт лишний нулевой байт после данных, как делает java.util.zip.ZipFile
+            Inflater inflater = new Inflater(true);
+            InputStream padded = new SequenceInputStream(raw, new ByteArrayInputStream(new byte[1]));
+            return new InflaterInputStream(padded, inflater, 16 * 1024) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inflater.end();
+                }
+            };
+        }
+        throw new ZipException("Неподдерживаемый метод сжатия " + entry.method + " у " + entry.name);
+    }
+
+    public byte[] readAll(Entry entry) throws IOException {
+        try (InputStream in = openStream(entry)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /** Сжатые байты записи как есть — для копирования без распаковки. */
+    InputStream openRaw(Entry entry) throws IOException {
+        return new RegionInputStream(channel, dataOffset(entry), entry.compressedSize);
+    }
+
+    private long dataOffset(Entry entry) throws IOException {
+        if (entry.dataOffset < 0) {
+            ByteBuffer header = read(entry.localHeaderOffset, 30);
+            if (header.getInt(0) != LOCAL_HEADER) throw new ZipException("Повреждён локальный заголовок " + entry.name);
+            int nameLength = header.getShort(26) & 0xFFFF;
+            int extraLength = header.getShort(28) & 0xFFFF;
+            entry.dataOffset = entry.localHeaderOffset + 30 + nameLength + extraLength;
+        }
+        return entry.dataOffset;
+    }
+
+    private void readCentralDirectory() throws IOException {
+        long size = channel.size();
+        int tailLength = (int) Math.min(size, 22 + 0xFFFF);
+        ByteBuffer tail = read(size - tailLength, tailLength);
+        int eocd = -1;
+        for (int i = tailLength - 22; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) throw new ZipException("Не найден конец центрального каталога — это не ZIP");
+        int count = tail.getShort(eocd + 10) & 0xFFFF;
+        long cdSize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long cdOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || cdOffset == 0xFFFFFFFFL) throw new ZipException("ZIP64 не поддерживается");
+
+        ByteBuffer cd = read(cdOffset, (int) cdSize);
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            if (cd.getInt(pos) != CENTRAL_HEADER) throw new ZipException("Повреждён центральный каталог");
+            Entry entry = new Entry();
+            entry.flags = cd.getShort(pos + 8) & 0xFFFF;
+            entry.method = cd.getShort(pos + 10) & 0xFFFF;
+            entry.dosTime = cd.getShort(pos + 12) & 0xFFFF;
+            entry.dosDate = cd.getShort(pos + 14) & 0xFFFF;
+            entry.crc = cd.getInt(pos + 16) & 0xFFFFFFFFL;
+            entry.compressedSize = cd.getInt(pos + 20) & 0xFFFFFFFFL;
+            entry.size = cd.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLength = cd.getShort(pos + 28) & 0xFFFF;
+            int extraLength = cd.getShort(pos + 30) & 0xFFFF;
+            int commentLength = cd.getShort(pos + 32) & 0xFFFF;
+            entry.localHeaderOffset = cd.getInt(pos + 42) & 0xFFFFFFFFL;
+            entry.nameBytes = new byte[nameLength];
+            cd.get(pos + 46, entry.nameBytes);
+            entry.name = new String(entry.nameBytes, StandardCharsets.UTF_8);
+            entries.put(entry.name, entry);
+            pos += 46 + nameLength + extraLength + commentLength;
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new ZipException("Архив обрезан");
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /** Запись центрального каталога. */
+    public static class Entry {
+        String name;
+        byte[] nameBytes;
+        int flags;
+        int method;
+        int dosTime;
+        int dosDate;
+        long crc;
+        long compressedSize;
+        long size;
+        long localHeaderOffset;
+        long dataOffset = -1;
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public int getDosTime() {
+            return dosTime;
+        }
+
+        public int getDosDate() {
+            return dosDate;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    /** Поток по участку файла; позиционное чтение канала потокобезопасно. */
+    private static final class RegionInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        RegionInputStream(FileChannel channel, long start, long length) {
+            this.channel = channel;
+            this.position = start;
+            this.end = start + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) return -1;
+            int toRead = (int) Math.min(len, end - position);
+            int n = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+            if (n < 0) throw new ZipException("Архив обрезан");
+            position += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.translator.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма длительностей в миллисекундах с фиксированными границами корзин
+ * (как у Prometheus). Запись без блокировок; квантили — по верхней границе корзины.
+ */
+public class Histogram {
+
+    static final long[] LATENCY_BOUNDS_MS = {
+            50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 20_000, 30_000, 60_000, 120_000, 300_000, 600_000};
+
+    private final long[] bounds;
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public Histogram() {
+        this(LATENCY_BOUNDS_MS);
+    }
+
+    Histogram(long[] bounds) {
+        this.bounds = bounds.clone();
+        // Последняя корзина — всё, что больше верхней границы (+Inf)
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    public void record(long millis) {
+        long value = Math.max(0, millis);
+        int i = 0;
+        while (i < bounds.length && value > bounds[i]) i++;
+        buckets[i].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumMillis() {
+        return sum.sum();
+    }
+
+    public long getMaxMillis() {
+        return max.get();
+    }
+
+    /** Оценка квантиля q (0..1) сверху; 0, если данных нет. */
+    public long quantile(double q) {
+        long[] counts = snapshot();
+        long total = 0;
+        for (long c : counts) total += c;
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) {
+                return i < bounds.length ? Math.min(bounds[i], max.get()) : max.get();
+            }
+        }
+        return max.get();
+    }
+
+    long[] getBounds() {
+        return bounds;
+    }
+
+    /** Число значений в каждой корзине (не накопительно). */
+    long[] snapshot() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < counts.length; i++) counts[i] = buckets[i].sum();
+        return counts;
+    }
+}
@@ -0,0 +1,454 @@
+package com.translator.metrics;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Счётчики конвейера перевода: пакеты, запросы к серверам, очередь, главы и ввод-вывод EPUB.
+ * Один экземпляр на процесс ({@link #get()}); пишется из любых потоков без блокировок
+ * и выгружается в JSON, текстовый формат Prometheus или строку для окна.
+ *
+ * <p>По разбивке времени главы на чтение, разбор, перевод, сериализацию и запись видно,
+ * во что упирается книга: в модель, в пакетирование или в работу с EPUB.
+ */
+public class Metrics {
+
+    private static final Metrics DEFAULT = new Metrics();
+    // Столько последних глав держим для отчёта — долгий --watch не должен копить их бесконечно
+    private static final int MAX_CHAPTERS = 500;
+
+    /** Этапы обработки главы. */
+    public enum Phase {READ, PARSE, TRANSLATE, SERIALIZE, WRITE}
+
+    private final long startedMillis = System.currentTimeMillis();
+
+    private final Histogram batchLatency = new Histogram();
+    private final Histogram batchQueueWait = new Histogram();
+    private final Histogram poolWait = new Histogram();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder segmentsSent = new LongAdder();
+    private final LongAdder charsSent = new LongAdder();
+    private final LongAdder charsTranslated = new LongAdder();
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder journalHits = new LongAdder();
+    private final LongAdder skippedSegments = new LongAdder();
+    private final LongAdder duplicateSegments = new LongAdder();
+    private final LongAdder bisections = new LongAdder();
+    private final LongAdder untranslatedSegments = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder abortedStreams = new LongAdder();
+    private final LongAdder truncatedAnswers = new LongAdder();
+    private final LongAdder failedChapters = new LongAdder();
+    private final AtomicInteger queuedBatches = new AtomicInteger();
+    private final AtomicInteger activeBatches = new AtomicInteger();
+    private final AtomicInteger waitingForEndpoint = new AtomicInteger();
+    private final LongAdder[] phaseNanos = new LongAdder[Phase.values().length];
+    private final Map<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+    private final Map<String, ChapterTimer> chapters = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ChapterTimer> eldest) {
+            return size() > MAX_CHAPTERS;
+        }
+    };
+
+    public Metrics() {
+        for (int i = 0; i < phaseNanos.length; i++) phaseNanos[i] = new LongAdder();
+    }
+
+    public static Metrics get() {
+        return DEFAULT;
+    }
+
+    // --- Пакеты (EpubProcessor) ---
+
+    public void batchQueued() {
+        queuedBatches.incrementAndGet();
+    }
+
+    /** Пакет взят потоком; waitMillis — сколько он простоял в очереди исполнителя. */
+    public void batchStarted(long waitMillis) {
+        queuedBatches.decrementAndGet();
+        activeBatches.incrementAndGet();
+        batchQueueWait.record(waitMillis);
+    }
+
+    public void batchFinished(long millis, int segments, int chars) {
+        activeBatches.decrementAndGet();
+        batchLatency.record(millis);
+        batches.increment();
+        segmentsSent.add(segments);
+        charsSent.add(chars);
+    }
+
+    public void memoryHit() {
+        memoryHits.increment();
+    }
+
+    public void journalHit() {
+        journalHits.increment();
+    }
+
+    /** Сегмент не требует перевода (разделитель, число, адрес, код) и остался как есть. */
+    public void segmentSkipped() {
+        skippedSegments.increment();
+    }
+
+    /** Такой же сегмент уже переведён или переводится в этой книге. */
+    public void segmentDeduplicated() {
+        duplicateSegments.increment();
+    }
+
+    public void bisected() {
+        bisections.increment();
+    }
+
+    public void segmentsUntranslated(int count) {
+        untranslatedSegments.add(count);
+    }
+
+    public void chapterFailed() {
+        failedChapters.increment();
+    }
+
+    // --- Запросы к серверам (TranslateService) ---
+
+    /** Поток ждёт свободный сервер в пуле. */
+    public void waitingForEndpoint(boolean waiting) {
+        if (waiting) waitingForEndpoint.incrementAndGet();
+        else waitingForEndpoint.decrementAndGet();
+    }
+
+    public void endpointAcquired(String endpoint, long waitMillis, boolean retry) {
+        poolWait.record(waitMillis);
+        if (retry) retries.increment();
+        endpointStats(endpoint).inFlight.incrementAndGet();
+    }
+
+    /**
+     * Запрос завершён. Счётчики Ollama передаются как есть; нули означают, что сервер их не прислал.
+     * translatedChars &lt; 0 — ответа нет (ошибка сети или HTTP).
+     */
+    public void requestFinished(String endpoint, long millis, int translatedChars, int promptTokens, long promptNanos,
+                                int evalTokens, long evalNanos, boolean truncated, boolean aborted) {
+        EndpointStats stats = endpointStats(endpoint);
+        stats.inFlight.decrementAndGet();
+        stats.latency.record(millis);
+        stats.requests.increment();
+        if (translatedChars < 0) {
+            stats.failures.increment();
+            return;
+        }
+        charsTranslated.add(translatedChars);
+        stats.promptTokens.add(promptTokens);
+        stats.promptNanos.add(promptNanos);
+        stats.evalTokens.add(evalTokens);
+        stats.evalNanos.add(evalNanos);
+        if (truncated) truncatedAnswers.increment();
+        if (aborted) abortedStreams.increment();
+    }
+
+    /** Все попытки пакета исчерпаны. */
+    public void batchFailed() {
+        failedBatches.increment();
+    }
+
+    private EndpointStats endpointStats(String endpoint) {
+        return endpoints.computeIfAbsent(endpoint, e -> new EndpointStats());
+    }
+
+    // --- Главы ---
+
+    public ChapterTimer startChapter(String book, String href) {
+        return new ChapterTimer(book, href);
+    }
+
+    public void finishChapter(ChapterTimer timer) {
+        for (int i = 0; i < phaseNanos.length; i++) phaseNanos[i].add(timer.phases[i]);
+        synchronized (chapters) {
+            chapters.put(timer.book + "/" + timer.href, timer);
+        }
+    }
+
+    // --- Выгрузка ---
+
+    /** Символов перевода в секунду с момента старта процесса. */
+    public double charsPerSecond() {
+        double seconds = Math.max(1, System.currentTimeMillis() - startedMillis) / 1000.0;
+        return charsTranslated.sum() / seconds;
+    }
+
+    /** Скорость генерации модели: eval_count / eval_duration по всем серверам. */
+    public double tokensPerSecond() {
+        long tokens = 0;
+        long nanos = 0;
+        for (EndpointStats stats : endpoints.values()) {
+            tokens += stats.evalTokens.sum();
+            nanos += stats.evalNanos.sum();
+        }
+        return nanos == 0 ? 0 : tokens / (nanos / 1e9);
+    }
+
+    /** Пакеты, ждущие потока, плюс запросы, ждущие свободного сервера. */
+    public int queueDepth() {
+        return queuedBatches.get() + waitingForEndpoint.get();
+    }
+
+    /** Одна строка для окна приложения. */
+    public String summary() {
+        long failures = 0;
+        for (EndpointStats stats : endpoints.values()) failures += stats.failures.sum();
+        return String.format(Locale.ROOT,
+                "Пакетов: %d (p50 %.1f с, p95 %.1f с) | %.0f симв/с | %.1f ток/с | в очереди: %d, в работе: %d | повторов: %d, ошибок: %d | из памяти: %d",
+                batches.sum(), batchLatency.quantile(0.5) / 1000.0, batchLatency.quantile(0.95) / 1000.0,
+                charsPerSecond(), tokensPerSecond(), queueDepth(), activeBatches.get(),
+                retries.sum(), failures, memoryHits.sum());
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("uptimeSeconds", (System.currentTimeMillis() - startedMillis) / 1000);
+        json.addProperty("charsPerSecond", round(charsPerSecond()));
+        json.addProperty("tokensPerSecond", round(tokensPerSecond()));
+        json.addProperty("queueDepth", queueDepth());
+        json.addProperty("queuedBatches", queuedBatches.get());
+        json.addProperty("activeBatches", activeBatches.get());
+        json.addProperty("waitingForEndpoint", waitingForEndpoint.get());
+        json.addProperty("batches", batches.sum());
+        json.addProperty("segmentsSent", segmentsSent.sum());
+        json.addProperty("charsSent", charsSent.sum());
+        json.addProperty("charsTranslated", charsTranslated.sum());
+        json.addProperty("memoryHits", memoryHits.sum());
+        json.addProperty("journalHits", journalHits.sum());
+        json.addProperty("skippedSegments", skippedSegments.sum());
+        json.addProperty("duplicateSegments", duplicateSegments.sum());
+        json.addProperty("retries", retries.sum());
+        json.addProperty("failedBatches", failedBatches.sum());
+        json.addProperty("bisections", bisections.sum());
+        json.addProperty("untranslatedSegments", untranslatedSegments.sum());
+        json.addProperty("abortedStreams", abortedStreams.sum());
+        json.addProperty("truncatedAnswers", truncatedAnswers.sum());
+        json.addProperty("failedChapters", failedChapters.sum());
+        json.add("batchLatencyMillis", histogramJson(batchLatency));
+        json.add("batchQueueWaitMillis", histogramJson(batchQueueWait));
+        json.add("endpointWaitMillis", histogramJson(poolWait));
+
+        JsonObject phases = new JsonObject();
+        for (Phase phase : Phase.values()) {
+            phases.addProperty(phase.name().toLowerCase(Locale.ROOT), phaseNanos[phase.ordinal()].sum() / 1_000_000);
+        }
+        json.add("chapterPhaseMillis", phases);
+
+        JsonObject endpointsJson = new JsonObject();
+        for (Map.Entry<String, EndpointStats> entry : new LinkedHashMap<>(endpoints).entrySet()) {
+            EndpointStats stats = entry.getValue();
+            JsonObject e = new JsonObject();
+            e.addProperty("requests", stats.requests.sum());
+            e.addProperty("failures", stats.failures.sum());
+            e.addProperty("inFlight", stats.inFlight.get());
+            e.addProperty("promptTokens", stats.promptTokens.sum());
+            e.addProperty("promptEvalMillis", stats.promptNanos.sum() / 1_000_000);
+            e.addProperty("evalTokens", stats.evalTokens.sum());
+            e.addProperty("evalMillis", stats.evalNanos.sum() / 1_000_000);
+            long evalNanos = stats.evalNanos.sum();
+            e.addProperty("tokensPerSecond", evalNanos == 0 ? 0 : round(stats.evalTokens.sum() / (evalNanos / 1e9)));
+            e.add("latencyMillis", histogramJson(stats.latency));
+            endpointsJson.add(entry.getKey(), e);
+        }
+        json.add("endpoints", endpointsJson);
+
+        JsonArray chaptersJson = new JsonArray();
+        for (ChapterTimer timer : recentChapters()) {
+            JsonObject c = new JsonObject();
+            c.addProperty("book", timer.book);
+            c.addProperty("href", timer.href);
+            c.addProperty("segments", timer.segments);
+            c.addProperty("chars", timer.chars);
+            for (Phase phase : Phase.values()) {
+                c.addProperty(phase.name().toLowerCase(Locale.ROOT) + "Millis", timer.phases[phase.ordinal()] / 1_000_000);
+            }
+            chaptersJson.add(c);
+        }
+        json.add("chapters", chaptersJson);
+        return json;
+    }
+
+    /** Текстовый формат Prometheus (node_exporter textfile collector и т.п.). */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        counter(out, "epub_batches_total", "Отправлено пакетов", batches.sum());
+        counter(out, "epub_segments_sent_total", "Сегментов отправлено в модель", segmentsSent.sum());
+        counter(out, "epub_chars_sent_total", "Символов оригинала отправлено", charsSent.sum());
+        counter(out, "epub_chars_translated_total", "Символов перевода получено", charsTranslated.sum());
+        counter(out, "epub_memory_hits_total", "Сегментов из памяти переводов", memoryHits.sum());
+        counter(out, "epub_journal_hits_total", "Сегментов из журнала", journalHits.sum());
+        counter(out, "epub_skipped_segments_total", "Сегментов, не требующих перевода", skippedSegments.sum());
+        counter(out, "epub_duplicate_segments_total", "Повторов сегментов, переведённых один раз на книгу", duplicateSegments.sum());
+        counter(out, "epub_retries_total", "Повторов запроса на другом сервере", retries.sum());
+        counter(out, "epub_failed_batches_total", "Пакетов без ответа после всех повторов", failedBatches.sum());
+        counter(out, "epub_bisections_total", "Делений невыровненных пакетов", bisections.sum());
+        counter(out, "epub_untranslated_segments_total", "Сегментов, оставленных без перевода", untranslatedSegments.sum());
+        counter(out, "epub_aborted_streams_total", "Прерванных потоковых генераций", abortedStreams.sum());
+        counter(out, "epub_truncated_answers_total", "Ответов, обрезанных по контексту", truncatedAnswers.sum());
+        counter(out, "epub_failed_chapters_total", "Глав с ошибкой", failedChapters.sum());
+        gauge(out, "epub_queued_batches", "Пакетов ждёт потока", queuedBatches.get());
+        gauge(out, "epub_active_batches", "Пакетов в работе", activeBatches.get());
+        gauge(out, "epub_waiting_for_endpoint", "Запросов ждёт свободного сервера", waitingForEndpoint.get());
+        histogram(out, "epub_batch_latency_seconds", "Время пакета вместе с повторами и делением", "", batchLatency, true);
+        histogram(out, "epub_batch_queue_wait_seconds", "Ожидание пакета в очереди", "", batchQueueWait, true);
+        histogram(out, "epub_endpoint_wait_seconds", "Ожидание свободного сервера", "", poolWait, true);
+
+        out.append("# HELP epub_chapter_phase_seconds_total Время глав по этапам\n# TYPE epub_chapter_phase_seconds_total counter\n");
+        for (Phase phase : Phase.values()) {
+            out.append("epub_chapter_phase_seconds_total{phase=\"").append(phase.name().toLowerCase(Locale.ROOT)).append("\"} ")
+                    .append(seconds(phaseNanos[phase.ordinal()].sum() / 1_000_000)).append('\n');
+        }
+
+        Map<String, EndpointStats> snapshot = new LinkedHashMap<>(endpoints);
+        endpointMetric(out, "epub_requests_total", "Запросов к серверу", "counter", snapshot, e -> String.valueOf(e.requests.sum()));
+        endpointMetric(out, "epub_request_failures_total", "Запросов с ошибкой", "counter", snapshot, e -> String.valueOf(e.failures.sum()));
+        endpointMetric(out, "epub_requests_in_flight", "Запросов в работе", "gauge", snapshot, e -> String.valueOf(e.inFlight.get()));
+        endpointMetric(out, "epub_prompt_tokens_total", "prompt_eval_count", "counter", snapshot, e -> String.valueOf(e.promptTokens.sum()));
+        endpointMetric(out, "epub_prompt_eval_seconds_total", "prompt_eval_duration", "counter", snapshot, e -> seconds(e.promptNanos.sum() / 1_000_000));
+        endpointMetric(out, "epub_eval_tokens_total", "eval_count", "counter", snapshot, e -> String.valueOf(e.evalTokens.sum()));
+        endpointMetric(out, "epub_eval_seconds_total", "eval_duration", "counter", snapshot, e -> seconds(e.evalNanos.sum() / 1_000_000));
+        boolean header = true;
+        for (Map.Entry<String, EndpointStats> entry : snapshot.entrySet()) {
+            histogram(out, "epub_request_latency_seconds", "Время запроса к серверу",
+                    "endpoint=\"" + escape(entry.getKey()) + "\"", entry.getValue().latency, header);
+            header = false;
+        }
+
+        out.append("# HELP epub_chapter_seconds Время последних глав по этапам\n# TYPE epub_chapter_seconds gauge\n");
+        for (ChapterTimer timer : recentChapters()) {
+            for (Phase phase : Phase.values()) {
+                out.append("epub_chapter_seconds{book=\"").append(escape(timer.book)).append("\",chapter=\"").append(escape(timer.href))
+                        .append("\",phase=\"").append(phase.name().toLowerCase(Locale.ROOT)).append("\"} ")
+                        .append(seconds(timer.phases[phase.ordinal()] / 1_000_000)).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private List<ChapterTimer> recentChapters() {
+        synchronized (chapters) {
+            return new ArrayList<>(chapters.values());
+        }
+    }
+
+    private static JsonObject histogramJson(Histogram histogram) {
+        JsonObject json = new JsonObject();
+        json.addProperty("count", histogram.getCount());
+        json.addProperty("sum", histogram.getSumMillis());
+        json.addProperty("p50", histogram.quantile(0.5));
+        json.addProperty("p90", histogram.quantile(0.9));
+        json.addProperty("p99", histogram.quantile(0.99));
+        json.addProperty("max", histogram.getMaxMillis());
+        return json;
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void endpointMetric(StringBuilder out, String name, String help, String type,
+                                       Map<String, EndpointStats> endpoints, Function<EndpointStats, String> value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+            out.append(name).append("{endpoint=\"").append(escape(entry.getKey())).append("\"} ")
+                    .append(value.apply(entry.getValue())).append('\n');
+        }
+    }
+
+    private static void histogram(StringBuilder out, String name, String help, String labels, Histogram histogram, boolean header) {
+        if (header) {
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(" histogram\n");
+        }
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long[] counts = histogram.snapshot();
+        long[] bounds = histogram.getBounds();
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            String le = i < bounds.length ? seconds(bounds[i]) : "+Inf";
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+        }
+        String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(suffix).append(' ').append(seconds(histogram.getSumMillis())).append('\n');
+        out.append(name).append("_count").append(suffix).append(' ').append(cumulative).append('\n');
+    }
+
+    private static String seconds(long millis) {
+        return String.format(Locale.ROOT, "%.3f", millis / 1000.0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    private static String escape(String label) {
+        return label == null ? "" : label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static final class EndpointStats {
+        final Histogram latency = new Histogram();
+        final LongAdder requests = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder promptTokens = new LongAdder();
+        final LongAdder promptNanos = new LongAdder();
+        final LongAdder evalTokens = new LongAdder();
+        final LongAdder evalNanos = new LongAdder();
+        final AtomicInteger inFlight = new AtomicInteger();
+    }
+
+    /** Разбивка времени одной главы по этапам; этапы отмечаются по порядку через {@link #lap}. */
+    public static final class ChapterTimer {
+        private final String book;
+        private final String href;
+        private final long[] phases = new long[Phase.values().length];
+        private long last = System.nanoTime();
+        private volatile int segments;
+        private volatile long chars;
+
+        ChapterTimer(String book, String href) {
+            this.book = book;
+            this.href = href;
+        }
+
+        /** Время с предыдущей отметки относится к этапу phase. */
+        public void lap(Phase phase) {
+            long now = System.nanoTime();
+            phases[phase.ordinal()] += now - last;
+            last = now;
+        }
+
+        public void setSize(int segments, long chars) {
+            this.segments = segments;
+            this.chars = chars;
+        }
+
+        public long getMillis(Phase phase) {
+            return phases[phase.ordinal()] / 1_000_000;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.translator.metrics;
+
+import com.google.gson.GsonBuilder;
+import com.translator.config.AppConfig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Периодически выгружает {@link Metrics} в {@code metrics.json} и {@code metrics.prom}.
+ * Файлы заменяются атомарно, так что их можно читать скриптом или собирать
+ * textfile-коллектором Prometheus прямо во время перевода.
+ */
+public class MetricsReporter implements Closeable {
+
+    private final Metrics metrics;
+    private final Path dir;
+    private final ScheduledExecutorService scheduler;
+
+    public MetricsReporter(Metrics metrics, Path dir, long intervalSeconds) {
+        this.metrics = metrics;
+        this.dir = dir;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::writeQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /** Выгрузка по {@code metrics.dir} и {@code metrics.interval.seconds}; null, если интервал 0. */
+    public static MetricsReporter fromConfig(Metrics metrics) {
+        AppConfig config = AppConfig.get();
+        int interval = config.getInt("metrics.interval.seconds", 15);
+        if (interval <= 0) return null;
+        String defaultDir = Path.of(System.getProperty("user.home"), ".epub-translator", "metrics").toString();
+        return new MetricsReporter(metrics, Path.of(config.getString("metrics.dir", defaultDir)), interval);
+    }
+
+    public void write() throws IOException {
+        Files.createDirectories(dir);
+        writeAtomically(dir.resolve("metrics.json"), new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(metrics.toJson()));
+        writeAtomically(dir.resolve("metrics.prom"), metrics.toPrometheus());
+    }
+
+    private void writeQuietly() {
+        try {
+            write();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Не удалось записать метрики в " + dir + ": " + e.getMessage());
+        }
+    }
+
+    private static void writeAtomically(Path target, String content) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.writeString(tmp, content, StandardCharsets.UTF_8);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Останавливает выгрузку и пишет финальный снимок. */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        writeQuietly();
+    }
+}
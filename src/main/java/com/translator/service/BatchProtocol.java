@@ -0,0 +1,126 @@
+package com.translator.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.translator.config.AppConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Как сегменты пакета упаковываются в запрос и достаются из ответа ({@code batch.protocol}).
+ * SEPARATOR — текст с разделителем {@code [[[...]]]}, части сопоставляются по порядку:
+ * потерянный или лишний разделитель сдвигает весь хвост пакета.
+ * JSON — массив {@code {"id", "text"}}, ответ ограничен JSON-схемой; части сопоставляются по id,
+ * поэтому пропущенный сегмент не портит соседей и переспрашивается отдельно.
+ */
+public enum BatchProtocol {
+    SEPARATOR,
+    JSON;
+
+    static final String SEP = " [[[...]]] ";
+    // Шаблон компилируется один раз: String.split с многосимвольным разделителем компилирует regex на каждый вызов
+    private static final Pattern SPLIT = Pattern.compile(Pattern.quote(SeparatorStreamParser.SEPARATOR));
+
+    public static BatchProtocol fromConfig(AppConfig config) {
+        String name = config.getString("batch.protocol", "separator");
+        switch (name.toLowerCase()) {
+            case "separator":
+                return SEPARATOR;
+            case "json":
+                return JSON;
+            default:
+                throw new IllegalArgumentException("Неизвестный batch.protocol: " + name + " (ожидается separator или json)");
+        }
+    }
+
+    /** Части ответа сопоставляются по номеру, а не по порядку. */
+    public boolean isKeyed() {
+        return this == JSON;
+    }
+
+    /** Текст запроса из сегментов пакета. */
+    public String encode(List<String> segments) {
+        StringBuilder text = new StringBuilder();
+        if (this == SEPARATOR) {
+            for (String segment : segments) text.append(segment).append(SEP);
+            return text.toString();
+        }
+        JsonArray items = new JsonArray(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", i);
+            item.addProperty("text", segments.get(i));
+            items.add(item);
+        }
+        return items.toString();
+    }
+
+    /**
+     * Части ответа. SEPARATOR — в порядке следования, сколько нашлось; JSON — ровно count элементов
+     * по id, на месте недостающих null.
+     */
+    public List<String> decode(String content, int count) {
+        if (this == SEPARATOR) {
+            List<String> parts = new ArrayList<>();
+            for (String part : SPLIT.split(content)) parts.add(part.trim());
+            return parts;
+        }
+        String[] parts = new String[count];
+        parser((index, text) -> {
+            if (index < count && parts[index] == null) parts[index] = text;
+            return true;
+        }).feed(content);
+        return Arrays.asList(parts);
+    }
+
+    /** Сколько токенов добавляет обёртка одного сегмента — в запросе и столько же в ответе. */
+    public int overheadTokens() {
+        // " [[[...]]] " против {"id":12,"text":""},
+        return this == SEPARATOR ? 6 : 10;
+    }
+
+    /** Правило для системного промпта (подставляется вместо {@code {format}}). */
+    public String promptRule() {
+        return this == SEPARATOR
+                ? "Preserve the separator '[[[...]]]' exactly. It MUST be in the output."
+                : "The input is a JSON array of {\"id\", \"text\"} objects. Reply with JSON {\"segments\": [...]} " +
+                "holding one {\"id\", \"text\"} object per input object: the same id, the translated text.";
+    }
+
+    /** JSON-схема ответа для Ollama ({@code format}) или null, если ответ — свободный текст. */
+    JsonObject schema() {
+        if (this == SEPARATOR) return null;
+        JsonObject id = new JsonObject();
+        id.addProperty("type", "integer");
+        JsonObject text = new JsonObject();
+        text.addProperty("type", "string");
+        JsonObject itemProperties = new JsonObject();
+        itemProperties.add("id", id);
+        itemProperties.add("text", text);
+        JsonObject item = object(itemProperties, "id", "text");
+        JsonObject segments = new JsonObject();
+        segments.addProperty("type", "array");
+        segments.add("items", item);
+        JsonObject properties = new JsonObject();
+        properties.add("segments", segments);
+        return object(properties, "segments");
+    }
+
+    SegmentParser parser(StreamListener listener) {
+        return this == SEPARATOR ? new SeparatorStreamParser(listener) : new JsonSegmentParser(listener);
+    }
+
+    private static JsonObject object(JsonObject properties, String... required) {
+        JsonObject object = new JsonObject();
+        object.addProperty("type", "object");
+        object.add("properties", properties);
+        JsonArray names = new JsonArray();
+        for (String name : required) names.add(new JsonPrimitive(name));
+        object.add("required", names);
+        return object;
+    }
+}
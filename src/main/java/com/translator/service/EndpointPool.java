@@ -0,0 +1,170 @@
+package com.translator.service;
+
+import com.translator.config.AppConfig;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Планировщик запросов по нескольким серверам Ollama.
+ * Запрос получает наименее загруженный здоровый сервер со свободным слотом;
+ * если свободных нет — ждёт в очереди (FIFO). Сервер с ошибкой выводится из ротации на время,
+ * которое растёт с каждой ошибкой подряд.
+ */
+public class EndpointPool {
+
+    private static final long MAX_COOLDOWN_MILLIS = 10 * 60 * 1000L;
+
+    private final List<ModelEndpoint> endpoints;
+    private final long cooldownMillis;
+    private final Deque<CompletableFuture<ModelEndpoint>> waiters = new ArrayDeque<>();
+    private long recoveryScheduledAt;
+
+    public EndpointPool(List<ModelEndpoint> endpoints, long cooldownMillis) {
+        if (endpoints.isEmpty()) throw new IllegalArgumentException("Список серверов Ollama пуст");
+        this.endpoints = new ArrayList<>(endpoints);
+        this.cooldownMillis = cooldownMillis;
+    }
+
+    public static EndpointPool fromConfig(AppConfig config) {
+        List<ModelEndpoint> endpoints = new ArrayList<>();
+        for (String spec : config.getList("ollama.endpoints", "http://127.0.0.1:11434")) {
+            endpoints.add(ModelEndpoint.parse(spec));
+        }
+        return new EndpointPool(endpoints, config.getInt("ollama.endpoint.cooldown.seconds", 30) * 1000L);
+    }
+
+    /** Суммарное число одновременных запросов по всем серверам. */
+    public int totalCapacity() {
+        int total = 0;
+        for (ModelEndpoint endpoint : endpoints) total += endpoint.getMaxConcurrent();
+        return total;
+    }
+
+    public List<ModelEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /** Блокирующий вариант {@link #acquireAsync()}. */
+    public ModelEndpoint acquire() throws InterruptedException {
+        CompletableFuture<ModelEndpoint> slot = acquireAsync();
+        try {
+            return slot.get();
+        } catch (InterruptedException e) {
+            // Слот мог достаться нам одновременно с прерыванием — возвращаем его
+            if (!slot.cancel(false)) giveBack(slot.join());
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Слот на наименее загруженном здоровом сервере. Если свободных нет, запрос встаёт в очередь
+     * без занятого потока и получает слот при {@link #release}; отменённый запрос из очереди выбывает.
+     */
+    public CompletableFuture<ModelEndpoint> acquireAsync() {
+        return acquireAsync(false);
+    }
+
+    /** urgent — встать в начало очереди: повтор пакета не должен ждать за всеми новыми. */
+    public CompletableFuture<ModelEndpoint> acquireAsync(boolean urgent) {
+        CompletableFuture<ModelEndpoint> slot = new CompletableFuture<>();
+        synchronized (this) {
+            if (urgent) {
+                waiters.addFirst(slot);
+            } else {
+                waiters.addLast(slot);
+            }
+        }
+        dispatch();
+        return slot;
+    }
+
+    public void release(ModelEndpoint endpoint, boolean success) {
+        synchronized (this) {
+            endpoint.inFlight--;
+            if (success) {
+                endpoint.completed++;
+                endpoint.consecutiveFailures = 0;
+            } else {
+                endpoint.failed++;
+                endpoint.consecutiveFailures++;
+                long cooldown = Math.min(MAX_COOLDOWN_MILLIS, cooldownMillis << Math.min(endpoint.consecutiveFailures - 1, 10));
+                endpoint.unhealthyUntil = System.currentTimeMillis() + cooldown;
+                System.err.println("  ! Сервер " + endpoint.getBaseUrl() + " выведен из ротации на " + cooldown / 1000 + " с.");
+            }
+        }
+        dispatch();
+    }
+
+    /** Возвращает слот, которым не воспользовались (запрос отменён), — без влияния на статистику сервера. */
+    public void giveBack(ModelEndpoint endpoint) {
+        synchronized (this) {
+            endpoint.inFlight--;
+        }
+        dispatch();
+    }
+
+    /** Раздаёт свободные слоты очереди; ожидающие завершаются вне блокировки. */
+    private void dispatch() {
+        while (true) {
+            CompletableFuture<ModelEndpoint> slot;
+            ModelEndpoint endpoint;
+            synchronized (this) {
+                while (!waiters.isEmpty() && waiters.peek().isDone()) waiters.poll();
+                if (waiters.isEmpty()) return;
+                long now = System.currentTimeMillis();
+                endpoint = pick(now);
+                if (endpoint == null) {
+                    scheduleRecovery(now);
+                    return;
+                }
+                slot = waiters.poll();
+                endpoint.inFlight++;
+            }
+            if (!slot.complete(endpoint)) {
+                // Отменили, пока выбирали сервер
+                synchronized (this) {
+                    endpoint.inFlight--;
+                }
+            }
+        }
+    }
+
+    private ModelEndpoint pick(long now) {
+        ModelEndpoint best = null;
+        for (ModelEndpoint endpoint : endpoints) {
+            if (endpoint.isHealthy(now) && endpoint.hasFreeSlot() && (best == null || endpoint.load() < best.load())) {
+                best = endpoint;
+            }
+        }
+        return best;
+    }
+
+    /** Все больны — проверим очередь снова, когда ближайший сервер вернётся в ротацию. */
+    private void scheduleRecovery(long now) {
+        long nextRecovery = Long.MAX_VALUE;
+        for (ModelEndpoint endpoint : endpoints) {
+            if (!endpoint.isHealthy(now)) nextRecovery = Math.min(nextRecovery, endpoint.unhealthyUntil);
+        }
+        if (nextRecovery == Long.MAX_VALUE || (recoveryScheduledAt != 0 && recoveryScheduledAt <= nextRecovery)) return;
+        recoveryScheduledAt = nextRecovery;
+        CompletableFuture.delayedExecutor(Math.max(1, nextRecovery - now), TimeUnit.MILLISECONDS).execute(() -> {
+            synchronized (this) {
+                recoveryScheduledAt = 0;
+            }
+            dispatch();
+        });
+    }
+
+    @Override
+    public synchronized String toString() {
+        return endpoints.toString();
+    }
+}
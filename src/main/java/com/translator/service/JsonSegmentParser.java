@@ -0,0 +1,122 @@
+package com.translator.service;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Потоковый разбор ответа {@code {"segments":[{"id":0,"text":"..."}, ...]}}: каждый объект массива
+ * отдаётся слушателю, как только закрылась его скобка, с индексом из {@code id}. Весь ответ целиком
+ * не разбирается — оборванный ответ всё равно отдаёт готовые объекты, битый объект просто пропускается.
+ */
+class JsonSegmentParser implements SegmentParser {
+
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*\"?(\\d+)");
+    private static final Pattern TEXT = Pattern.compile("\"text\"\\s*:\\s*\"");
+
+    private final StreamListener listener;
+    // Открытые скобки ответа; объект прямо внутри массива — сегмент
+    private final StringBuilder containers = new StringBuilder();
+    private final StringBuilder item = new StringBuilder();
+    private int itemDepth = -1;
+    private boolean inString;
+    private boolean escaped;
+    private int count;
+    // Номер и начало перевода в недописанном объекте — для проверки растущего сегмента
+    private int partialId = -1;
+    private int partialStart = -1;
+
+    JsonSegmentParser(StreamListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public boolean feed(String chunk) {
+        for (int i = 0; i < chunk.length(); i++) {
+            char c = chunk.charAt(i);
+            if (itemDepth >= 0) item.append(c);
+            if (inString) {
+                if (escaped) escaped = false;
+                else if (c == '\\') escaped = true;
+                else if (c == '"') inString = false;
+                continue;
+            }
+            if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                if (c == '{' && itemDepth < 0 && containers.length() > 0
+                        && containers.charAt(containers.length() - 1) == '[') {
+                    itemDepth = containers.length();
+                    item.append(c);
+                }
+                containers.append(c);
+            } else if ((c == '}' || c == ']') && containers.length() > 0) {
+                containers.setLength(containers.length() - 1);
+                if (containers.length() == itemDepth) {
+                    boolean proceed = emit(item.toString());
+                    item.setLength(0);
+                    itemDepth = -1;
+                    partialId = -1;
+                    partialStart = -1;
+                    if (!proceed) return false;
+                }
+            }
+        }
+        return itemDepth < 0 || checkPartial();
+    }
+
+    @Override
+    public boolean finish() {
+        // Недописанный объект перевода не содержит — его текст оборван
+        return true;
+    }
+
+    @Override
+    public int segmentCount() {
+        return count;
+    }
+
+    private boolean checkPartial() {
+        if (partialId < 0) {
+            Matcher id = ID.matcher(item);
+            if (!id.find()) return true;
+            partialId = parseId(id.group(1));
+        }
+        if (partialStart < 0) {
+            Matcher text = TEXT.matcher(item);
+            if (!text.find()) return true;
+            partialStart = text.end();
+        }
+        return partialId < 0 || listener.onPartial(partialId, item.subSequence(partialStart, item.length()));
+    }
+
+    private boolean emit(String json) {
+        JsonObject object;
+        try {
+            JsonElement element = JsonParser.parseString(json);
+            if (!element.isJsonObject()) return true;
+            object = element.getAsJsonObject();
+        } catch (JsonSyntaxException e) {
+            return true;
+        }
+        JsonElement id = object.get("id");
+        JsonElement text = object.get("text");
+        if (id == null || text == null || !id.isJsonPrimitive() || !text.isJsonPrimitive()) return true;
+        int index = parseId(id.getAsString());
+        if (index < 0) return true;
+        count++;
+        return listener.onSegment(index, text.getAsString().trim());
+    }
+
+    private static int parseId(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.translator.service;
+
+/**
+ * Один сервер модели в пуле (Ollama или OpenAI-совместимый): адрес, лимит одновременных запросов и состояние здоровья.
+ * Все изменения состояния делает {@link EndpointPool} под своей блокировкой.
+ */
+public class ModelEndpoint {
+
+    private final String baseUrl;
+    private final int maxConcurrent;
+
+    int inFlight;
+    long unhealthyUntil;
+    int consecutiveFailures;
+    long completed;
+    long failed;
+
+    public ModelEndpoint(String baseUrl, int maxConcurrent) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+    }
+
+    /** Разбор строки вида {@code http://gpu1:11434|2} (лимит необязателен, по умолчанию 1). */
+    public static ModelEndpoint parse(String spec) {
+        int bar = spec.lastIndexOf('|');
+        if (bar < 0) return new ModelEndpoint(spec.trim(), 1);
+        return new ModelEndpoint(spec.substring(0, bar).trim(), Integer.parseInt(spec.substring(bar + 1).trim()));
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /** Адрес чата Ollama; OpenAI-совместимому бэкенду нужен только {@link #getBaseUrl()}. */
+    public String chatUrl() {
+        return baseUrl + "/api/chat";
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    boolean isHealthy(long now) {
+        return now >= unhealthyUntil;
+    }
+
+    boolean hasFreeSlot() {
+        return inFlight < maxConcurrent;
+    }
+
+    double load() {
+        return (double) inFlight / maxConcurrent;
+    }
+
+    @Override
+    public String toString() {
+        return baseUrl + " (" + inFlight + "/" + maxConcurrent + ", ok " + completed + ", ошибок " + failed + ")";
+    }
+}
@@ -0,0 +1,251 @@
+package com.translator.service;
+
+import com.translator.config.AppConfig;
+import com.translator.core.AdaptiveBatcher;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.Content;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.Tokenizer;
+import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.model.output.FinishReason;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Бэкенд для OpenAI-совместимых серверов ({@code /v1/chat/completions}): llama.cpp server, vLLM, LM Studio.
+ * Они сами объединяют одновременные запросы в пакеты на GPU, поэтому слотов на сервер обычно дают больше,
+ * чем Ollama. Запросы идут через langchain4j; его собственные повторы выключены — повторяет {@link PooledBackend}.
+ *
+ * <p>Окно контекста сервер не принимает в запросе — его размер задаёт {@code openai.context.tokens}.
+ * Потоковый запрос langchain4j оборвать не даёт: после отмены или остановки слушателем слот пула
+ * освобождается сразу, а сервер дописывает ответ впустую. Потоковый ответ не содержит счётчиков токенов —
+ * они оцениваются так же, как при сборке пакетов.
+ */
+public class OpenAiBackend extends PooledBackend {
+
+    private final Map<ModelEndpoint, OpenAiChatModel> chatModels = new HashMap<>();
+    private final Map<ModelEndpoint, OpenAiStreamingChatModel> streamingModels = new HashMap<>();
+    private final ExecutorService executor;
+
+    public OpenAiBackend(EndpointPool pool, int retries, int contextSize, boolean streaming,
+                         String model, String systemPrompt, BatchProtocol protocol, String apiKey, Duration timeout) {
+        super(pool, retries, contextSize, streaming, model, systemPrompt, protocol, "openai");
+        Tokenizer tokenizer = new EstimatingTokenizer();
+        // Схему ответа langchain4j передать не умеет — только режим JSON; форму задаёт промпт
+        String responseFormat = protocol == BatchProtocol.JSON ? "json_object" : null;
+        for (ModelEndpoint endpoint : pool.getEndpoints()) {
+            if (streaming) {
+                streamingModels.put(endpoint, OpenAiStreamingChatModel.builder()
+                        .baseUrl(endpoint.getBaseUrl()).apiKey(apiKey).modelName(model)
+                        .temperature(0.0).timeout(timeout).tokenizer(tokenizer)
+                        .responseFormat(responseFormat)
+                        .build());
+            } else {
+                chatModels.put(endpoint, OpenAiChatModel.builder()
+                        .baseUrl(endpoint.getBaseUrl()).apiKey(apiKey).modelName(model)
+                        .temperature(0.0).timeout(timeout).tokenizer(tokenizer)
+                        .responseFormat(responseFormat)
+                        // Одна попытка: повторы с паузой и сменой сервера делает PooledBackend
+                        .maxRetries(1)
+                        .build());
+            }
+        }
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "openai-http-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static OpenAiBackend fromConfig(AppConfig config) {
+        List<ModelEndpoint> endpoints = new ArrayList<>();
+        for (String spec : config.getList("openai.endpoints", "http://127.0.0.1:8000/v1|8")) {
+            endpoints.add(ModelEndpoint.parse(spec));
+        }
+        // Повторы, таймауты и поток — openai.*, а если не заданы, общие ollama.*
+        EndpointPool pool = new EndpointPool(endpoints, setting(config, "openai", "endpoint.cooldown.seconds", 30) * 1000L);
+        BatchProtocol protocol = BatchProtocol.fromConfig(config);
+        return new OpenAiBackend(pool, setting(config, "openai", "retries", 2),
+                config.getInt("openai.context.tokens", 8192), setting(config, "openai", "stream", true),
+                config.getString("translation.model", "llama3"), systemPrompt(config, protocol), protocol,
+                // Локальные серверы ключ не проверяют, но клиент OpenAI без ключа не работает
+                config.getString("openai.api.key", "not-needed"),
+                Duration.ofSeconds(setting(config, "openai", "read.timeout.seconds", 900)));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    protected Runnable send(ModelEndpoint endpoint, String text, StreamListener listener, long timeoutMillis, Attempt done) {
+        List<ChatMessage> messages = List.of(SystemMessage.from(getSystemPrompt()), UserMessage.from(text));
+        long started = System.nanoTime();
+        if (listener != null) {
+            StreamingHandler handler = new StreamingHandler(getProtocol(), listener, started, done);
+            try {
+                streamingModels.get(endpoint).generate(messages, handler);
+            } catch (RuntimeException e) {
+                handler.onError(e);
+            }
+            return handler::cancel;
+        }
+        Future<?> running = executor.submit(() -> {
+            TranslationResult translated = null;
+            String error = null;
+            try {
+                Response<AiMessage> response = chatModels.get(endpoint).generate(messages);
+                TokenUsage usage = response.tokenUsage();
+                translated = new TranslationResult(stripPreamble(response.content().text().trim()),
+                        count(usage == null ? null : usage.inputTokenCount()),
+                        count(usage == null ? null : usage.outputTokenCount()), 0, 0,
+                        (System.nanoTime() - started) / 1_000_000, response.finishReason() == FinishReason.LENGTH);
+            } catch (RuntimeException e) {
+                error = e.getMessage();
+            }
+            done.finish(translated, error);
+        });
+        return () -> running.cancel(true);
+    }
+
+    private static int count(Integer value) {
+        return value == null ? 0 : value;
+    }
+
+    /** Токены потокового ответа: сегменты уходят слушателю, итог — в done ровно один раз. */
+    private static final class StreamingHandler implements StreamingResponseHandler<AiMessage> {
+        private final StringBuilder content = new StringBuilder();
+        private final SegmentParser parser;
+        private final long started;
+        private final Attempt done;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private long firstSegmentMillis = -1;
+        private volatile boolean stopped;
+
+        StreamingHandler(BatchProtocol protocol, StreamListener listener, long started, Attempt done) {
+            this.started = started;
+            this.done = done;
+            this.parser = protocol.parser(new StreamListener() {
+                @Override
+                public boolean onSegment(int index, String segment) {
+                    if (firstSegmentMillis < 0) firstSegmentMillis = (System.nanoTime() - started) / 1_000_000;
+                    return listener.onSegment(index, segment);
+                }
+
+                @Override
+                public boolean onPartial(int index, CharSequence partial) {
+                    return listener.onPartial(index, partial);
+                }
+            });
+        }
+
+        @Override
+        public synchronized void onNext(String token) {
+            if (stopped) return;
+            content.append(token);
+            if (!parser.feed(token)) {
+                // Слушатель остановил генерацию — отдаём то, что есть, остаток ответа игнорируем
+                stopped = true;
+                complete(null, true);
+            }
+        }
+
+        @Override
+        public synchronized void onComplete(Response<AiMessage> response) {
+            if (stopped) return;
+            boolean aborted = !parser.finish();
+            complete(response, aborted);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            if (finished.compareAndSet(false, true)) done.finish(null, String.valueOf(error.getMessage()));
+        }
+
+        void cancel() {
+            stopped = true;
+            onError(new IllegalStateException("запрос отменён"));
+        }
+
+        private void complete(Response<AiMessage> response, boolean aborted) {
+            if (!finished.compareAndSet(false, true)) return;
+            if (aborted) {
+                System.err.println("  ! Генерация прервана на сегменте " + parser.segmentCount() + " (" + content.length() + " симв.)");
+            }
+            TokenUsage usage = response == null ? null : response.tokenUsage();
+            done.finish(new TranslationResult(content.toString().trim(),
+                    count(usage == null ? null : usage.inputTokenCount()),
+                    count(usage == null ? null : usage.outputTokenCount()), 0, 0,
+                    (System.nanoTime() - started) / 1_000_000,
+                    response != null && response.finishReason() == FinishReason.LENGTH,
+                    aborted, firstSegmentMillis), null);
+        }
+    }
+
+    /**
+     * langchain4j по умолчанию считает токены словарём OpenAI и на чужих моделях (llama3, qwen…) падает.
+     * Оценки достаточно: точные числа нужны только метрикам и подстройке размера пакета.
+     */
+    private static final class EstimatingTokenizer implements Tokenizer {
+        @Override
+        public int estimateTokenCountInText(String text) {
+            return text == null ? 0 : AdaptiveBatcher.estimateTokens(text);
+        }
+
+        @Override
+        public int estimateTokenCountInMessage(ChatMessage message) {
+            // ChatMessage.text() устарел — текст берём у конкретного типа сообщения
+            if (message instanceof SystemMessage) return estimateTokenCountInText(((SystemMessage) message).text());
+            if (message instanceof AiMessage) return estimateTokenCountInText(((AiMessage) message).text());
+            if (message instanceof ToolExecutionResultMessage) {
+                return estimateTokenCountInText(((ToolExecutionResultMessage) message).text());
+            }
+            if (message instanceof UserMessage) {
+                int total = 0;
+                for (Content content : ((UserMessage) message).contents()) {
+                    if (content instanceof TextContent) total += estimateTokenCountInText(((TextContent) content).text());
+                }
+                return total;
+            }
+            return 0;
+        }
+
+        @Override
+        public int estimateTokenCountInMessages(Iterable<ChatMessage> messages) {
+            int total = 0;
+            for (ChatMessage message : messages) total += estimateTokenCountInMessage(message);
+            return total;
+        }
+
+        @Override
+        public int estimateTokenCountInToolSpecifications(Iterable<ToolSpecification> toolSpecifications) {
+            return 0;
+        }
+
+        @Override
+        public int estimateTokenCountInToolExecutionRequests(Iterable<ToolExecutionRequest> toolExecutionRequests) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.translator.service;
+
+import com.translator.config.AppConfig;
+import com.translator.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Общая часть бэкендов: серверы из {@link EndpointPool}, повторы на другом сервере с паузой,
+ * общий срок пакета, отмена и метрики. Наследнику остаётся одна попытка — {@link #send}.
+ */
+public abstract class PooledBackend implements TranslationBackend {
+
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+    private static final String DEFAULT_PROMPT =
+            "You are an expert literary translator. Translate the provided book text {source}into {target}.\n" +
+                    "CRITICAL RULES:\n" +
+                    "1. {format}\n" +
+                    "2. NO explanations, NO introductory text like 'Here is the translation'.\n" +
+                    "3. Use professional, novel-style {target}.\n" +
+                    "4. Maintain paragraph breaks.";
+
+    protected final Metrics metrics = Metrics.get();
+    private final EndpointPool pool;
+    private final int retries;
+    private final int contextSize;
+    private final boolean streaming;
+    private final String model;
+    private final String systemPrompt;
+    private final BatchProtocol protocol;
+    private final long deadlineMillis;
+    private final long backoffMillis;
+    private final boolean warmUp;
+
+    protected PooledBackend(EndpointPool pool, int retries, int contextSize, boolean streaming,
+                            String model, String systemPrompt, BatchProtocol protocol) {
+        this(pool, retries, contextSize, streaming, model, systemPrompt, protocol, "ollama");
+    }
+
+    /** settings — префикс настроек бэкенда ({@code ollama}, {@code openai}), см. {@link #setting}. */
+    protected PooledBackend(EndpointPool pool, int retries, int contextSize, boolean streaming,
+                            String model, String systemPrompt, BatchProtocol protocol, String settings) {
+        this.pool = pool;
+        this.retries = retries;
+        this.contextSize = contextSize;
+        this.streaming = streaming;
+        this.model = model;
+        this.systemPrompt = systemPrompt;
+        this.protocol = protocol;
+        AppConfig config = AppConfig.get();
+        this.deadlineMillis = setting(config, settings, "request.deadline.seconds", 3600) * 1000L;
+        this.backoffMillis = setting(config, settings, "retry.backoff.millis", 500);
+        this.warmUp = setting(config, settings, "warmup", true);
+    }
+
+    /** Настройка бэкенда {@code <settings>.key}; если она не задана — общая {@code ollama.key}. */
+    protected static int setting(AppConfig config, String settings, String key, int def) {
+        return config.getInt(settings + "." + key, config.getInt("ollama." + key, def));
+    }
+
+    protected static boolean setting(AppConfig config, String settings, String key, boolean def) {
+        return config.getBoolean(settings + "." + key, config.getBoolean("ollama." + key, def));
+    }
+
+    /**
+     * Системный промпт: {@code translation.prompt} или встроенный, с языками из
+     * {@code translation.source.language} и {@code translation.target.language}; {@code {format}} — правило протокола.
+     * Для русского без исходного языка текст тот же, что был всегда, — ключи памяти переводов не меняются.
+     */
+    public static String systemPrompt(AppConfig config, BatchProtocol protocol) {
+        String source = config.getString("translation.source.language", "");
+        String target = config.getString("translation.target.language", "Russian");
+        return config.getString("translation.prompt", DEFAULT_PROMPT)
+                .replace("{source}", source.isEmpty() ? "" : "from " + source + " ")
+                .replace("{target}", target)
+                .replace("{format}", protocol.promptRule());
+    }
+
+    public EndpointPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public int getParallelism() {
+        return pool.totalCapacity();
+    }
+
+    @Override
+    public int getContextSize() {
+        return contextSize;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    @Override
+    public String getModel() {
+        return model;
+    }
+
+    @Override
+    public String getSystemPrompt() {
+        return systemPrompt;
+    }
+
+    @Override
+    public BatchProtocol getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Ожидание сервера — в очереди пула, сама попытка — у наследника, пауза перед повтором — в таймере.
+     * Срок {@code ollama.request.deadline.seconds} общий на ожидание, попытки и паузы.
+     */
+    @Override
+    public CompletableFuture<TranslationResult> requestBatchAsync(String text, StreamListener listener, Runnable onStarted) {
+        BatchRequest request = new BatchRequest(text, listener, onStarted);
+        request.attempt(0);
+        return request.result;
+    }
+
+    /**
+     * По короткому запросу в каждый слот каждого сервера, мимо пула и метрик. Запрос тот же, что у пакетов
+     * (модель, окно контекста, системный промпт), — иначе сервер перезагрузил бы модель или не узнал префикс.
+     */
+    @Override
+    public CompletableFuture<Void> warmUp() {
+        if (!warmUp) return CompletableFuture.completedFuture(null);
+        String text = protocol.encode(List.of("Hello."));
+        List<CompletableFuture<Void>> endpoints = new ArrayList<>();
+        for (ModelEndpoint endpoint : pool.getEndpoints()) {
+            long started = System.nanoTime();
+            AtomicLong promptNanos = new AtomicLong();
+            List<CompletableFuture<Void>> slots = new ArrayList<>();
+            for (int i = 0; i < endpoint.getMaxConcurrent(); i++) {
+                CompletableFuture<Void> slot = new CompletableFuture<>();
+                send(endpoint, text, null, deadlineMillis, (result, error) -> {
+                    if (result != null) promptNanos.accumulateAndGet(result.getPromptEvalNanos(), Math::max);
+                    else System.err.println("  ! Прогрев " + endpoint.getBaseUrl() + ": " + error);
+                    slot.complete(null);
+                });
+                slots.add(slot);
+            }
+            endpoints.add(CompletableFuture.allOf(slots.toArray(CompletableFuture<?>[]::new)).thenRun(() ->
+                    System.out.println(">>> Прогрев " + endpoint.getBaseUrl() + ": слотов " + slots.size() + ", готов через "
+                            + (System.nanoTime() - started) / 1_000_000 + " мс (промпт ~" + promptNanos.get() / 1_000_000 + " мс)")));
+        }
+        return CompletableFuture.allOf(endpoints.toArray(CompletableFuture<?>[]::new));
+    }
+
+    /**
+     * Одна попытка на сервере endpoint. Итог — ровно один вызов done (в том числе после отмены);
+     * возвращает действие, которое обрывает попытку.
+     */
+    protected abstract Runnable send(ModelEndpoint endpoint, String text, StreamListener listener,
+                                     long timeoutMillis, Attempt done);
+
+    /** Итог попытки: перевод или (если его нет) описание ошибки. */
+    protected interface Attempt {
+        void finish(TranslationResult result, String error);
+    }
+
+    /** Модели иногда начинают с "Here is the translation" — отрезаем всё до первого разделителя. */
+    protected String stripPreamble(String content) {
+        if (protocol == BatchProtocol.SEPARATOR && content.toLowerCase().contains("here is") && content.contains("[[[...]]]")) {
+            return content.substring(content.indexOf("[[[...]]]"));
+        }
+        return content;
+    }
+
+    @Override
+    public String toString() {
+        return model + " @ " + pool;
+    }
+
+    /** Один пакет со всеми попытками. */
+    private final class BatchRequest {
+        final CompletableFuture<TranslationResult> result = new CompletableFuture<>();
+        private final String text;
+        private final StreamListener listener;
+        private final long deadline;
+        private Runnable onStarted;
+        private volatile CompletableFuture<ModelEndpoint> slot;
+        private volatile Runnable abort;
+
+        BatchRequest(String text, StreamListener listener, Runnable onStarted) {
+            this.text = text;
+            this.listener = listener;
+            this.onStarted = onStarted;
+            this.deadline = System.nanoTime() + deadlineMillis * 1_000_000;
+            result.whenComplete((r, e) -> {
+                if (!result.isCancelled()) return;
+                CompletableFuture<ModelEndpoint> waiting = slot;
+                if (waiting != null) waiting.cancel(false);
+                Runnable running = abort;
+                if (running != null) running.run();
+            });
+        }
+
+        void attempt(int attempt) {
+            if (result.isDone()) return;
+            long remaining = remainingMillis();
+            if (remaining <= 0) {
+                giveUp("истёк срок запроса");
+                return;
+            }
+            long waitStarted = System.nanoTime();
+            metrics.waitingForEndpoint(true);
+            CompletableFuture<ModelEndpoint> waiting = pool.acquireAsync(attempt > 0);
+            slot = waiting;
+            if (result.isCancelled()) waiting.cancel(false);
+            waiting.orTimeout(remaining, TimeUnit.MILLISECONDS).whenComplete((endpoint, error) -> {
+                metrics.waitingForEndpoint(false);
+                if (error != null) {
+                    if (!result.isDone()) giveUp("не дождались свободного сервера");
+                    return;
+                }
+                if (result.isDone()) {
+                    pool.giveBack(endpoint);
+                    return;
+                }
+                metrics.endpointAcquired(endpoint.getBaseUrl(), (System.nanoTime() - waitStarted) / 1_000_000, attempt > 0);
+                if (onStarted != null) {
+                    onStarted.run();
+                    onStarted = null;
+                }
+                long started = System.nanoTime();
+                if (listener != null) listener.onAttempt();
+                Runnable running = send(endpoint, text, listener, Math.max(1, remainingMillis()),
+                        (translated, problem) -> finish(endpoint, attempt, started, translated, problem));
+                abort = running;
+                if (result.isCancelled()) running.run();
+            });
+        }
+
+        private void finish(ModelEndpoint endpoint, int attempt, long started, TranslationResult translated, String error) {
+            if (result.isCancelled()) {
+                // Отмена — не вина сервера
+                pool.giveBack(endpoint);
+                return;
+            }
+            pool.release(endpoint, translated != null);
+            recordRequest(endpoint, started, translated);
+            if (translated != null) {
+                result.complete(translated);
+                return;
+            }
+            System.err.println("Ошибка " + endpoint.getBaseUrl() + ": " + error);
+            if (attempt >= retries) {
+                giveUp(null);
+                return;
+            }
+            // Экспоненциальная пауза; половина случайна, чтобы пакеты, упавшие вместе, не вернулись разом
+            long delay = Math.min(MAX_BACKOFF_MILLIS, backoffMillis << Math.min(attempt, 16));
+            delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> attempt(attempt + 1));
+        }
+
+        private void giveUp(String reason) {
+            if (reason != null) System.err.println("  ! Пакет снят: " + reason);
+            metrics.batchFailed();
+            result.complete(null);
+        }
+
+        private long remainingMillis() {
+            return (deadline - System.nanoTime()) / 1_000_000;
+        }
+    }
+
+    private void recordRequest(ModelEndpoint endpoint, long started, TranslationResult result) {
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        if (result == null) {
+            metrics.requestFinished(endpoint.getBaseUrl(), millis, -1, 0, 0, 0, 0, false, false);
+        } else {
+            metrics.requestFinished(endpoint.getBaseUrl(), millis, result.getContent().length(),
+                    result.getPromptEvalCount(), result.getPromptEvalNanos(), result.getEvalCount(), result.getEvalNanos(),
+                    result.isTruncated(), result.isAborted());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.translator.service;
+
+/** Разбирает ответ модели по мере прихода и отдаёт готовые сегменты слушателю. */
+interface SegmentParser {
+
+    /** @return false, если слушатель попросил прервать генерацию */
+    boolean feed(String chunk);
+
+    /** Ответ закончился: отдаёт недописанный хвост, если он что-то значит. */
+    boolean finish();
+
+    /** Сколько сегментов уже отдано. */
+    int segmentCount();
+}
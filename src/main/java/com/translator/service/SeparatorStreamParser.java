@@ -0,0 +1,59 @@
+package com.translator.service;
+
+import java.util.regex.Pattern;
+
+/**
+ * Режет поток текста модели по разделителю {@code [[[...]]]} и отдаёт готовые сегменты слушателю.
+ * Вступление вида "Here is the translation:" в начале первого сегмента отбрасывается.
+ */
+class SeparatorStreamParser implements SegmentParser {
+
+    static final String SEPARATOR = "[[[...]]]";
+    private static final Pattern PREAMBLE = Pattern.compile(
+            "^(here is|here's|sure|certainly|вот перевод)[^\\n]*?:\\s*", Pattern.CASE_INSENSITIVE);
+
+    private final StreamListener listener;
+    private final StringBuilder pending = new StringBuilder();
+    private int index;
+    private boolean first = true;
+
+    SeparatorStreamParser(StreamListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public boolean feed(String chunk) {
+        pending.append(chunk);
+        int sep;
+        while ((sep = pending.indexOf(SEPARATOR)) >= 0) {
+            String segment = pending.substring(0, sep);
+            pending.delete(0, sep + SEPARATOR.length());
+            if (!emit(segment)) return false;
+        }
+        return listener.onPartial(index, pending);
+    }
+
+    @Override
+    public boolean finish() {
+        if (pending.toString().isBlank()) return true;
+        String rest = pending.toString();
+        pending.setLength(0);
+        return emit(rest);
+    }
+
+    @Override
+    public int segmentCount() {
+        return index;
+    }
+
+    private boolean emit(String raw) {
+        String text = raw.trim();
+        if (first) {
+            first = false;
+            text = PREAMBLE.matcher(text).replaceFirst("");
+            // Ответ начался с разделителя или целиком состоял из вступления
+            if (text.isEmpty()) return true;
+        }
+        return listener.onSegment(index++, text);
+    }
+}
@@ -0,0 +1,20 @@
+package com.translator.service;
+
+/**
+ * Получатель потокового ответа: сегменты приходят по мере генерации
+ * (см. {@link BatchProtocol}). Возврат {@code false} прерывает запрос.
+ */
+public interface StreamListener {
+
+    /** Начинается попытка запроса: всё, что пришло от прежней, недействительно. */
+    default void onAttempt() {
+    }
+
+    /** Готов сегмент перевода: номер по порядку или id из JSON, с нуля. */
+    boolean onSegment(int index, String text);
+
+    /** Недописанный сегмент растёт — можно проверить, не пошла ли генерация вразнос. */
+    default boolean onPartial(int index, CharSequence partial) {
+        return true;
+    }
+}
@@ -3,41 +3,197 @@ package com.translator.service;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.translator.config.AppConfig;
+import com.translator.core.AdaptiveBatcher;
 import okhttp3.*;
+import okio.BufferedSource;
+
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Бэкенд Ollama: {@code /api/chat}, окно контекста передаётся как {@code num_ctx}. */
+public class TranslateService extends PooledBackend {
 
-public class TranslateService {
     private final OkHttpClient client;
     private final Gson gson;
-    private static final String OLLAMA_URL = "http://127.0.0.1:11434/api/chat";
+    private final ExecutorService httpExecutor;
+    private final String keepAlive;
+    private final int keepTokens;
 
     public TranslateService() {
+        this(EndpointPool.fromConfig(AppConfig.get()), AppConfig.get().getInt("ollama.retries", 2),
+                AppConfig.get().getInt("ollama.num_ctx", 8192),
+                AppConfig.get().getBoolean("ollama.stream", true));
+    }
+
+    public TranslateService(EndpointPool pool, int retries) {
+        this(pool, retries, 8192, false);
+    }
+
+    public TranslateService(EndpointPool pool, int retries, int contextSize, boolean streaming) {
+        this(pool, retries, contextSize, streaming, BatchProtocol.fromConfig(AppConfig.get()));
+    }
+
+    public TranslateService(EndpointPool pool, int retries, int contextSize, boolean streaming, BatchProtocol protocol) {
+        this(pool, retries, contextSize, streaming, AppConfig.get().getString("translation.model", "llama3"),
+                systemPrompt(AppConfig.get(), protocol), protocol);
+    }
+
+    public TranslateService(EndpointPool pool, int retries, int contextSize, boolean streaming,
+                            String model, String systemPrompt, BatchProtocol protocol) {
+        super(pool, retries, contextSize, streaming, model, systemPrompt, protocol);
+        AppConfig config = AppConfig.get();
+        AtomicInteger threads = new AtomicInteger();
+        this.httpExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "ollama-http-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Dispatcher dispatcher = new Dispatcher(httpExecutor);
+        // Сколько запросов идёт одновременно, решает EndpointPool; лимиты OkHttp (64, по 5 на хост) ему бы мешали
+        dispatcher.setMaxRequests(1024);
+        dispatcher.setMaxRequestsPerHost(1024);
         this.client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
                 .connectTimeout(60, TimeUnit.SECONDS)
                 .writeTimeout(120, TimeUnit.SECONDS)
-                .readTimeout(900, TimeUnit.SECONDS) // 15 минут для 8к символов
+                // 15 минут по умолчанию — на 8к символов; между чанками потокового ответа это тоже предел
+                .readTimeout(config.getInt("ollama.read.timeout.seconds", 900), TimeUnit.SECONDS)
                 .build();
         this.gson = new Gson();
+        this.keepAlive = config.getString("ollama.keep.alive", "");
+        // Запас на шаблон чата поверх оценки промпта
+        this.keepTokens = AdaptiveBatcher.estimateTokens(systemPrompt) + 16;
+    }
+
+    /** Обрывает все запросы и останавливает потоки HTTP-клиента. */
+    @Override
+    public void close() {
+        client.dispatcher().cancelAll();
+        httpExecutor.shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    @Override
+    protected Runnable send(ModelEndpoint endpoint, String text, StreamListener listener, long timeoutMillis, Attempt done) {
+        Request request = new Request.Builder().url(endpoint.chatUrl()).post(buildBody(text, listener != null)).build();
+        Call call = client.newCall(request);
+        call.timeout().timeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        long started = System.nanoTime();
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call failed, IOException e) {
+                done.finish(null, e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call finished, Response response) {
+                TranslationResult translated = null;
+                String error = null;
+                try (response) {
+                    if (response.isSuccessful() && response.body() != null) {
+                        translated = listener != null
+                                ? readStream(response, started, listener)
+                                : readResponse(response, started);
+                    } else {
+                        error = "HTTP " + response.code();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    error = e.getMessage();
+                }
+                done.finish(translated, error);
+            }
+        });
+        return call::cancel;
+    }
+
+    private TranslationResult readResponse(Response response, long started) throws IOException {
+        String respBody = response.body().string();
+        JsonObject jsonResponse = gson.fromJson(respBody, JsonObject.class);
+        String content = jsonResponse.getAsJsonObject("message").get("content").getAsString().trim();
+
+        return new TranslationResult(stripPreamble(content),
+                intField(jsonResponse, "prompt_eval_count"), intField(jsonResponse, "eval_count"),
+                longField(jsonResponse, "prompt_eval_duration"), longField(jsonResponse, "eval_duration"),
+                (System.nanoTime() - started) / 1_000_000, isTruncated(jsonResponse));
     }
 
-    public String translateBatch(String text) {
-        if (text == null || text.trim().isEmpty()) return text;
+    private TranslationResult readStream(Response response, long started, StreamListener listener) throws IOException {
+        long[] firstSegment = {-1};
+        StringBuilder content = new StringBuilder();
+        SegmentParser parser = getProtocol().parser(new StreamListener() {
+            @Override
+            public boolean onSegment(int index, String segment) {
+                if (firstSegment[0] < 0) firstSegment[0] = (System.nanoTime() - started) / 1_000_000;
+                return listener.onSegment(index, segment);
+            }
 
+            @Override
+            public boolean onPartial(int index, CharSequence partial) {
+                return listener.onPartial(index, partial);
+            }
+        });
+        BufferedSource source = response.body().source();
+        JsonObject last = null;
+        boolean aborted = false;
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            if (line.isBlank()) continue;
+            JsonObject chunk = gson.fromJson(line, JsonObject.class);
+            if (chunk.has("error")) throw new IOException(chunk.get("error").getAsString());
+            if (chunk.has("message")) {
+                String piece = chunk.getAsJsonObject("message").get("content").getAsString();
+                content.append(piece);
+                if (!parser.feed(piece)) {
+                    aborted = true;
+                    break;
+                }
+            }
+            if (chunk.has("done") && chunk.get("done").getAsBoolean()) {
+                last = chunk;
+                break;
+            }
+        }
+        // Досрочный обрыв — не вина сервера, в ротации его оставляем
+        if (!aborted) aborted = !parser.finish();
+        if (aborted) {
+            System.err.println("  ! Генерация прервана на сегменте " + parser.segmentCount() + " (" + content.length() + " симв.)");
+        }
+        JsonObject stats = last != null ? last : new JsonObject();
+        return new TranslationResult(content.toString().trim(),
+                intField(stats, "prompt_eval_count"), intField(stats, "eval_count"),
+                longField(stats, "prompt_eval_duration"), longField(stats, "eval_duration"),
+                (System.nanoTime() - started) / 1_000_000, isTruncated(stats),
+                aborted, firstSegment[0]);
+    }
+
+    private RequestBody buildBody(String text, boolean stream) {
         JsonObject requestJson = new JsonObject();
-        requestJson.addProperty("model", "llama3");
-        requestJson.addProperty("stream", false);
+        requestJson.addProperty("model", getModel());
+        requestJson.addProperty("stream", stream);
+
+        // Без num_ctx Ollama берёт окно по умолчанию и молча обрезает длинные пакеты
+        JsonObject options = new JsonObject();
+        options.addProperty("num_ctx", getContextSize());
+        // Если вход не влез в окно, Ollama режет середину, а начало (num_keep токенов) оставляет — пусть это будет промпт
+        options.addProperty("num_keep", keepTokens);
+        requestJson.add("options", options);
+        // Модель не выгружается между пакетами и книгами; число — секунды, строка — "30m", "-1" — навсегда
+        if (!keepAlive.isEmpty()) {
+            if (keepAlive.matches("-?\\d+")) requestJson.addProperty("keep_alive", Long.parseLong(keepAlive));
+            else requestJson.addProperty("keep_alive", keepAlive);
+        }
+        // JSON-протокол: Ollama ограничивает генерацию схемой, ответ всегда разбирается
+        JsonObject schema = getProtocol().schema();
+        if (schema != null) requestJson.add("format", schema);
 
         JsonArray messages = new JsonArray();
         JsonObject systemMessage = new JsonObject();
         systemMessage.addProperty("role", "system");
-        systemMessage.addProperty("content",
-                "You are an expert literary translator. Translate the provided book text into Russian.\n" +
-                        "CRITICAL RULES:\n" +
-                        "1. Preserve the separator '[[[...]]]' exactly. It MUST be in the output.\n" +
-                        "2. NO explanations, NO introductory text like 'Here is the translation'.\n" +
-                        "3. Use professional, novel-style Russian.\n" +
-                        "4. Maintain paragraph breaks.");
+        systemMessage.addProperty("content", getSystemPrompt());
         messages.add(systemMessage);
 
         JsonObject userMessage = new JsonObject();
@@ -47,26 +203,18 @@ public class TranslateService {
 
         requestJson.add("messages", messages);
 
-        RequestBody body = RequestBody.create(
-                requestJson.toString(), MediaType.get("application/json; charset=utf-8"));
+        return RequestBody.create(requestJson.toString(), MediaType.get("application/json; charset=utf-8"));
+    }
 
-        Request request = new Request.Builder().url(OLLAMA_URL).post(body).build();
+    private static boolean isTruncated(JsonObject json) {
+        return json.has("done_reason") && "length".equals(json.get("done_reason").getAsString());
+    }
 
-        try (Response response = client.newCall(request).execute()) {
-            if (response.isSuccessful() && response.body() != null) {
-                String respBody = response.body().string();
-                JsonObject jsonResponse = gson.fromJson(respBody, JsonObject.class);
-                String content = jsonResponse.getAsJsonObject("message").get("content").getAsString().trim();
+    private static int intField(JsonObject json, String name) {
+        return json.has(name) && !json.get(name).isJsonNull() ? json.get(name).getAsInt() : 0;
+    }
 
-                // Очистка от возможного мусора ИИ в начале
-                if (content.toLowerCase().contains("here is") && content.contains("[[[...]]]")) {
-                    content = content.substring(content.indexOf("[[[...]]]"));
-                }
-                return content;
-            }
-        } catch (IOException e) {
-            System.err.println("Ошибка Ollama: " + e.getMessage());
-        }
-        return null;
+    private static long longField(JsonObject json, String name) {
+        return json.has(name) && !json.get(name).isJsonNull() ? json.get(name).getAsLong() : 0L;
     }
-}
\ No newline at end of file
+}
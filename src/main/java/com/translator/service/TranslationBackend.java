@@ -0,0 +1,102 @@
+package com.translator.service;
+
+import com.translator.config.AppConfig;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Сервер, который переводит пакеты: {@link TranslateService} (Ollama, {@code /api/chat})
+ * или {@link OpenAiBackend} (OpenAI-совместимый API: llama.cpp server, vLLM и т.п.).
+ * Какой из них взять, решает {@code translation.backend}.
+ */
+public interface TranslationBackend extends Closeable {
+
+    static TranslationBackend fromConfig(AppConfig config) {
+        String name = config.getString("translation.backend", "ollama").toLowerCase();
+        switch (name) {
+            case "ollama":
+                return new TranslateService();
+            case "openai":
+                return OpenAiBackend.fromConfig(config);
+            default:
+                throw new IllegalArgumentException("Неизвестный translation.backend: " + name + " (ожидается ollama или openai)");
+        }
+    }
+
+    /** Сколько пакетов имеет смысл держать в работе одновременно. */
+    int getParallelism();
+
+    /** Размер окна контекста модели в токенах: пакет и его перевод должны в него помещаться. */
+    int getContextSize();
+
+    /** Отдаёт ли сервер ответ по частям (тогда listener получает сегменты по мере генерации). */
+    boolean isStreaming();
+
+    String getModel();
+
+    String getSystemPrompt();
+
+    /** Как сегменты пакета упакованы в запрос и ответ. */
+    default BatchProtocol getProtocol() {
+        return BatchProtocol.SEPARATOR;
+    }
+
+    /**
+     * Запрос без занятого потока. С listener ответ потоковый: готовые сегменты сразу уходят слушателю,
+     * а если он вернул false, генерация прекращается. onStarted вызывается один раз, когда первая попытка
+     * получила сервер. Результат null — ответа нет после всех повторов; {@code cancel()} обрывает запрос.
+     */
+    CompletableFuture<TranslationResult> requestBatchAsync(String text, StreamListener listener, Runnable onStarted);
+
+    default String translateBatch(String text) {
+        if (text == null || text.trim().isEmpty()) return text;
+        TranslationResult result = requestBatch(text);
+        return result == null ? null : result.getContent();
+    }
+
+    default CompletableFuture<String> translateBatchAsync(String text) {
+        if (text == null || text.trim().isEmpty()) return CompletableFuture.completedFuture(text);
+        CompletableFuture<TranslationResult> request = requestBatchAsync(text, null, null);
+        CompletableFuture<String> content = request.thenApply(result -> result == null ? null : result.getContent());
+        // thenApply не передаёт отмену назад — иначе cancel() не оборвал бы запрос
+        content.whenComplete((result, error) -> {
+            if (content.isCancelled()) request.cancel(true);
+        });
+        return content;
+    }
+
+    default TranslationResult requestBatch(String text) {
+        return await(requestBatchAsync(text, null, null));
+    }
+
+    /** Блокирующий потоковый запрос, см. {@link #requestBatchAsync}. */
+    default TranslationResult requestBatchStreaming(String text, StreamListener listener) {
+        return await(requestBatchAsync(text, listener, null));
+    }
+
+    /**
+     * Прогрев: загрузить модель и посчитать системный промпт в каждом слоте заранее, пока книга читается.
+     * Завершается, когда ответили все серверы; ошибки только пишутся в лог.
+     */
+    default CompletableFuture<Void> warmUp() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /** Обрывает все запросы и останавливает потоки клиента. */
+    @Override
+    void close();
+
+    private static TranslationResult await(CompletableFuture<TranslationResult> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+}
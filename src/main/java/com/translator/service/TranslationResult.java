@@ -0,0 +1,77 @@
+package com.translator.service;
+
+/**
+ * Ответ модели на один пакет вместе со счётчиками Ollama
+ * ({@code prompt_eval_count}, {@code eval_count} и длительности в наносекундах).
+ * Поля со значением 0 означают, что сервер их не прислал.
+ */
+public class TranslationResult {
+
+    private final String content;
+    private final int promptEvalCount;
+    private final int evalCount;
+    private final long promptEvalNanos;
+    private final long evalNanos;
+    private final long latencyMillis;
+    private final boolean truncated;
+    private final boolean aborted;
+    private final long firstSegmentMillis;
+
+    public TranslationResult(String content, int promptEvalCount, int evalCount,
+                             long promptEvalNanos, long evalNanos, long latencyMillis, boolean truncated) {
+        this(content, promptEvalCount, evalCount, promptEvalNanos, evalNanos, latencyMillis, truncated, false, -1);
+    }
+
+    public TranslationResult(String content, int promptEvalCount, int evalCount,
+                             long promptEvalNanos, long evalNanos, long latencyMillis, boolean truncated,
+                             boolean aborted, long firstSegmentMillis) {
+        this.content = content;
+        this.promptEvalCount = promptEvalCount;
+        this.evalCount = evalCount;
+        this.promptEvalNanos = promptEvalNanos;
+        this.evalNanos = evalNanos;
+        this.latencyMillis = latencyMillis;
+        this.truncated = truncated;
+        this.aborted = aborted;
+        this.firstSegmentMillis = firstSegmentMillis;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public int getPromptEvalCount() {
+        return promptEvalCount;
+    }
+
+    public int getEvalCount() {
+        return evalCount;
+    }
+
+    public long getPromptEvalNanos() {
+        return promptEvalNanos;
+    }
+
+    public long getEvalNanos() {
+        return evalNanos;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    /** Модель упёрлась в лимит контекста ({@code done_reason = length}) — конец ответа потерян. */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /** Потоковый запрос прерван досрочно: генерация пошла не туда. */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /** Время до первого готового сегмента в потоковом режиме, -1 если неизвестно. */
+    public long getFirstSegmentMillis() {
+        return firstSegmentMillis;
+    }
+}
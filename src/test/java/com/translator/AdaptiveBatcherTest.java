@@ -0,0 +1,75 @@
+package com.translator;
+
+import com.translator.core.AdaptiveBatcher;
+import com.translator.service.TranslationResult;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveBatcherTest {
+
+    private static TranslationResult result(long latencyMillis, boolean truncated) {
+        return new TranslationResult("...", 0, 0, 0, 0, latencyMillis, truncated);
+    }
+
+    @Test
+    public void testCyrillicCostsMoreTokensThanLatin() {
+        Assertions.assertEquals(3, AdaptiveBatcher.estimateTokens("Hello world"));
+        Assertions.assertTrue(AdaptiveBatcher.estimateTokens("Привет мир!") > AdaptiveBatcher.estimateTokens("Hello world"));
+    }
+
+    @Test
+    public void testTargetNeverExceedsContextBudget() {
+        AdaptiveBatcher batcher = new AdaptiveBatcher(2048, 100, 100_000, 1.6);
+        Assertions.assertTrue(batcher.targetCost() <= batcher.maxCost());
+        Assertions.assertTrue(batcher.maxCost() < 2048 - 100);
+    }
+
+    @Test
+    public void testTruncatedAnswerHalvesTarget() {
+        AdaptiveBatcher batcher = new AdaptiveBatcher(8192, 100, 4000, 1.6);
+        batcher.record(8000, 2000, result(10_000, true));
+        Assertions.assertEquals(2000, batcher.targetCost());
+    }
+
+    @Test
+    public void testTargetGrowsWhileThroughputImproves() {
+        AdaptiveBatcher batcher = new AdaptiveBatcher(32768, 100, 2000, 1.6);
+        for (int i = 0; i < 3; i++) batcher.record(4000, 1000, result(4000, false));
+        int afterFirstWindow = batcher.targetCost();
+        Assertions.assertTrue(afterFirstWindow > 2000);
+
+        // Больше символов за то же время — продолжаем увеличивать
+        for (int i = 0; i < 3; i++) batcher.record(6000, 1500, result(4000, false));
+        Assertions.assertTrue(batcher.targetCost() > afterFirstWindow);
+
+        // Стало медленнее — разворачиваемся
+        int beforeSlowdown = batcher.targetCost();
+        for (int i = 0; i < 3; i++) batcher.record(6000, 1500, result(20_000, false));
+        Assertions.assertTrue(batcher.targetCost() < beforeSlowdown);
+    }
+
+    @Test
+    public void testCachedPromptPrefixDoesNotSkewInputEstimate() {
+        AdaptiveBatcher batcher = new AdaptiveBatcher(8192, 300, 4000, 1.6);
+        // Системный промпт (300 токенов) уже в кэше слота: prompt_eval_count — только сам пакет
+        for (int i = 0; i < 20; i++) {
+            batcher.record(2000, 500, new TranslationResult("...", 500, 800, 0, 0, 1000, false));
+        }
+        Assertions.assertEquals(500, batcher.inputTokens("x".repeat(2000)), 10);
+        // Без кэша тот же пакет стоит 500 + 300
+        for (int i = 0; i < 20; i++) {
+            batcher.record(2000, 500, new TranslationResult("...", 800, 800, 0, 0, 1000, false));
+        }
+        Assertions.assertEquals(500, batcher.inputTokens("x".repeat(2000)), 10);
+    }
+
+    @Test
+    public void testFlatThroughputDoesNotShrinkTarget() {
+        AdaptiveBatcher batcher = new AdaptiveBatcher(32768, 100, 4000, 1.6);
+        // Скорость не меняется — размер качается вверх-вниз, но не уползает
+        for (int window = 0; window < 40; window++) {
+            for (int i = 0; i < 3; i++) batcher.record(4000, 1000, result(4000, false));
+        }
+        Assertions.assertTrue(batcher.targetCost() >= 3900, "target " + batcher.targetCost());
+    }
+}
@@ -0,0 +1,76 @@
+package com.translator;
+
+import com.translator.service.EndpointPool;
+import com.translator.service.ModelEndpoint;
+import com.translator.service.TranslateService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncRequestTest {
+
+    private OllamaStub stub;
+
+    @AfterEach
+    public void stopStub() {
+        if (stub != null) stub.close();
+    }
+
+    // Заглушка: первые failures запросов — HTTP 500, остальные отвечают "Привет" через delayMillis
+    private String startStub(int failures, long delayMillis, AtomicInteger calls, CountDownLatch received) throws Exception {
+        stub = OllamaStub.start(1, request -> {
+            int call = calls.incrementAndGet();
+            received.countDown();
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return call <= failures ? null : OllamaStub.reply("Привет");
+        });
+        return stub.url();
+    }
+
+    @Test
+    public void testFailedRequestIsRetriedAfterCooldown() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        String url = startStub(1, 0, calls, new CountDownLatch(1));
+        // Единственный сервер после ошибки выводится из ротации — повтор ждёт его в очереди пула, не в потоке
+        EndpointPool pool = new EndpointPool(List.of(new ModelEndpoint(url, 1)), 200);
+        TranslateService service = new TranslateService(pool, 1);
+
+        CompletableFuture<String> translated = service.translateBatchAsync("Hello [[[...]]] ");
+
+        Assertions.assertEquals("Привет", translated.get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(2, calls.get());
+        service.close();
+    }
+
+    @Test
+    public void testCancelAbortsRequestAndFreesSlot() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch received = new CountDownLatch(1);
+        String url = startStub(0, 5000, calls, received);
+        EndpointPool pool = new EndpointPool(List.of(new ModelEndpoint(url, 1)), 1000);
+        TranslateService service = new TranslateService(pool, 2);
+
+        CompletableFuture<String> slow = service.translateBatchAsync("Hello [[[...]]] ");
+        // Второй запрос ждёт в очереди пула — его отмена не должна занять слот
+        CompletableFuture<String> queued = service.translateBatchAsync("World [[[...]]] ");
+        Assertions.assertTrue(received.await(5, TimeUnit.SECONDS));
+        queued.cancel(true);
+        slow.cancel(true);
+
+        // Слот вернулся сразу, а не через 5 секунд, и сервер не выведен из ротации
+        CompletableFuture<ModelEndpoint> slot = pool.acquireAsync();
+        Assertions.assertNotNull(slot.get(1, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, calls.get());
+        service.close();
+    }
+}
@@ -0,0 +1,66 @@
+package com.translator;
+
+import com.translator.core.EpubProcessor;
+import com.translator.service.TranslateService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class DeduplicationTest {
+
+    @TempDir
+    Path dir;
+    private OllamaStub stub;
+
+    @AfterEach
+    public void stopStub() {
+        if (stub != null) stub.close();
+    }
+
+    // Заглушка переводит в верхний регистр и запоминает всё, что ей отправили
+    private TranslateService startRecordingStub(ConcurrentLinkedQueue<String> sent) throws Exception {
+        stub = OllamaStub.start(2, request -> {
+            String text = OllamaStub.lastMessage(request);
+            sent.add(text);
+            return OllamaStub.reply(text.toUpperCase());
+        });
+        return stub.service();
+    }
+
+    @Test
+    public void testRepeatedSegmentsAreTranslatedOnceAndServiceTextIsKept() throws Exception {
+        ConcurrentLinkedQueue<String> sent = new ConcurrentLinkedQueue<>();
+        TranslateService service = startRecordingStub(sent);
+        String[] bodies = new String[3];
+        for (int i = 0; i < bodies.length; i++) {
+            bodies[i] = "<p class=\"header\">The Long Road</p><h2>XIV</h2><p>* * *</p><p>42</p>"
+                    + "<p>Unique paragraph number " + (i + 1) + ".</p>"
+                    + "<pre><code>int value = compute();</code></pre><p>https://example.com/book</p>"
+                    + "<p>The Long Road</p>";
+        }
+        Path input = TestEpub.write(dir.resolve("book.epub"), bodies);
+        Path output = dir.resolve("book_RU.epub");
+
+        new EpubProcessor().process(input.toString(), output.toString(), service);
+
+        for (int i = 1; i <= bodies.length; i++) {
+            String chapter = TestEpub.readEntry(output, "OEBPS/ch" + i + ".xhtml");
+            Assertions.assertTrue(chapter.contains("<p class=\"header\">THE LONG ROAD</p>"), chapter);
+            Assertions.assertTrue(chapter.contains("<p>THE LONG ROAD</p>"), chapter);
+            Assertions.assertTrue(chapter.contains("<p>UNIQUE PARAGRAPH NUMBER " + i + ".</p>"), chapter);
+            Assertions.assertTrue(chapter.contains("<h2>XIV</h2><p>* * *</p><p>42</p>"), chapter);
+            Assertions.assertTrue(chapter.contains("<code>int value = compute();</code>"), chapter);
+            Assertions.assertTrue(chapter.contains("<p>https://example.com/book</p>"), chapter);
+        }
+
+        String all = String.join("\n", sent);
+        Assertions.assertEquals(1, all.split("The Long Road", -1).length - 1, all);
+        Assertions.assertFalse(all.contains("compute()"), all);
+        Assertions.assertFalse(all.contains("* * *"), all);
+        Assertions.assertFalse(all.contains("example.com"), all);
+    }
+}
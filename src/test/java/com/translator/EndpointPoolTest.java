@@ -0,0 +1,73 @@
+package com.translator;
+
+import com.translator.service.EndpointPool;
+import com.translator.service.ModelEndpoint;
+import com.translator.service.TranslateService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EndpointPoolTest {
+
+    private final List<OllamaStub> stubs = new ArrayList<>();
+
+    @AfterEach
+    public void stopStubs() {
+        for (OllamaStub stub : stubs) stub.close();
+    }
+
+    // Заглушка /api/chat: исправная отвечает "Привет", сломанная — HTTP 500; запросы считаются
+    private String startStub(boolean healthy, AtomicInteger calls) throws Exception {
+        OllamaStub stub = OllamaStub.start(1, request -> {
+            calls.incrementAndGet();
+            return healthy ? OllamaStub.reply("Привет") : null;
+        });
+        stubs.add(stub);
+        return stub.url();
+    }
+
+    @Test
+    public void testLeastLoadedEndpointIsChosen() throws Exception {
+        ModelEndpoint a = new ModelEndpoint("http://a:11434", 2);
+        ModelEndpoint b = new ModelEndpoint("http://b:11434", 1);
+        EndpointPool pool = new EndpointPool(List.of(a, b), 1000);
+
+        Assertions.assertEquals(3, pool.totalCapacity());
+        ModelEndpoint first = pool.acquire();
+        ModelEndpoint second = pool.acquire();
+        ModelEndpoint third = pool.acquire();
+        Assertions.assertNotEquals(first, second);
+        Assertions.assertEquals(a, third);
+    }
+
+    @Test
+    public void testFailingEndpointIsTakenOutOfRotation() throws Exception {
+        AtomicInteger brokenCalls = new AtomicInteger();
+        AtomicInteger healthyCalls = new AtomicInteger();
+        String broken = startStub(false, brokenCalls);
+        String healthy = startStub(true, healthyCalls);
+
+        EndpointPool pool = new EndpointPool(List.of(
+                new ModelEndpoint(broken, 1), new ModelEndpoint(healthy, 1)), 60_000);
+        TranslateService service = new TranslateService(pool, 2);
+
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals("Привет", service.translateBatch("Hello [[[...]]] "));
+        }
+        // Сломанный сервер получил не больше одного запроса, остальное ушло на рабочий
+        Assertions.assertTrue(brokenCalls.get() <= 1);
+        Assertions.assertEquals(5, healthyCalls.get());
+    }
+
+    @Test
+    public void testParseEndpointSpec() {
+        ModelEndpoint endpoint = ModelEndpoint.parse("http://gpu1:11434/|3");
+        Assertions.assertEquals("http://gpu1:11434", endpoint.getBaseUrl());
+        Assertions.assertEquals(3, endpoint.getMaxConcurrent());
+        Assertions.assertEquals("http://gpu1:11434/api/chat", endpoint.chatUrl());
+    }
+}
@@ -17,10 +17,10 @@ public class HtmlStructureTest {
         String html = "<p><b>Hello</b> world</p>";
 
         // 2. Создаем "фейковый" сервис БЕЗ MOCKITO
-        // Мы просто переопределяем метод translate "на лету"
+        // Мы просто переопределяем метод translateBatch "на лету"
         TranslateService mockService = new TranslateService() {
             @Override
-            public String translate(String text) {
+            public String translateBatch(String text) {
                 if (text.equals("Hello")) return "Привет";
                 if (text.equals(" world")) return " мир";
                 return text; // Возвращаем как есть, если не знаем перевода
@@ -37,7 +37,7 @@ public class HtmlStructureTest {
                 if (node instanceof TextNode) {
                     TextNode textNode = (TextNode) node;
                     if (textNode.text().trim().length() > 0) {
-                        String translated = mockService.translate(textNode.text());
+                        String translated = mockService.translateBatch(textNode.text());
                         textNode.text(translated);
                     }
                 }
@@ -0,0 +1,179 @@
+package com.translator;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.translator.batch.JobQueue;
+import com.translator.batch.JobResult;
+import com.translator.config.AppConfig;
+import com.translator.core.EpubProcessor;
+import com.translator.service.TranslateService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class JobQueueTest {
+
+    @TempDir
+    Path dir;
+    private OllamaStub stub;
+
+    @AfterEach
+    public void stopStub() {
+        if (stub != null) stub.close();
+    }
+
+    // Заглушка "переводит" в верхний регистр
+    private TranslateService startUppercaseStub() throws Exception {
+        stub = OllamaStub.start(2, request -> OllamaStub.reply(OllamaStub.lastMessage(request).toUpperCase()));
+        return stub.service();
+    }
+
+    @Test
+    public void testSubmittedBooksGetResultFiles() throws Exception {
+        Path first = TestEpub.write(dir.resolve("first.epub"), "<p>First book.</p>");
+        Path second = TestEpub.write(dir.resolve("second.epub"), "<p>Second book.</p>");
+        Path broken = Files.writeString(dir.resolve("broken.epub"), "not a zip");
+
+        JobQueue queue = new JobQueue(new EpubProcessor(), startUppercaseStub(), 2);
+        JobResult a = queue.submit(first, JobQueue.outputFor(first, null, "RU")).join();
+        JobResult b = queue.submit(second, JobQueue.outputFor(second, null, "RU")).join();
+        JobResult c = queue.submit(broken, JobQueue.outputFor(broken, null, "RU")).join();
+        queue.close();
+
+        Assertions.assertEquals(JobResult.DONE, a.getStatus());
+        Assertions.assertEquals(JobResult.DONE, b.getStatus());
+        Assertions.assertEquals(JobResult.FAILED, c.getStatus());
+        Assertions.assertTrue(TestEpub.readEntry(dir.resolve("second_RU.epub"), "OEBPS/ch1.xhtml").contains("SECOND BOOK."));
+
+        JsonObject report = JsonParser.parseString(Files.readString(dir.resolve("first_RU.epub.result.json"))).getAsJsonObject();
+        Assertions.assertEquals("done", report.get("status").getAsString());
+        Assertions.assertEquals("Test Book", report.get("title").getAsString());
+        Assertions.assertEquals(1, report.get("chapters").getAsInt());
+        Assertions.assertTrue(Files.exists(dir.resolve("broken_RU.epub.result.json")));
+    }
+
+    @Test
+    public void testOutputNameFollowsTargetLanguage() {
+        Assertions.assertEquals("RU", JobQueue.languageCode(config("Russian", "")));
+        Assertions.assertEquals("DE", JobQueue.languageCode(config("German", "")));
+        Assertions.assertEquals("DE", JobQueue.languageCode(config("Deutsch", "")));
+        Assertions.assertEquals("UK", JobQueue.languageCode(config("ukrainian", "")));
+        Assertions.assertEquals("UA", JobQueue.languageCode(config("Ukrainian", "ua")));
+        Assertions.assertEquals("KLINGON", JobQueue.languageCode(config("Klingon", "")));
+        Assertions.assertEquals(Path.of("/books/out/tale_DE.epub"),
+                JobQueue.outputFor(Path.of("/books/tale.EPUB"), Path.of("/books/out"), "DE"));
+    }
+
+    private static AppConfig config(String language, String code) {
+        Properties props = new Properties();
+        props.setProperty("translation.target.language", language);
+        props.setProperty("translation.target.code", code);
+        return new AppConfig(props);
+    }
+
+    @Test
+    public void testWatchedInboxIsDrained() throws Exception {
+        Path inbox = dir;
+        Path out = inbox.resolve("out");
+        JobQueue queue = new JobQueue(new EpubProcessor(), startUppercaseStub(), 1);
+        Thread watcher = new Thread(() -> {
+            try {
+                queue.watch(inbox, out, "RU", 50);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        watcher.start();
+
+        TestEpub.write(inbox.resolve("nightly.epub"), "<p>Nightly book.</p>");
+        Path done = inbox.resolve("done").resolve("nightly.epub");
+        for (int i = 0; i < 200 && !Files.exists(done); i++) Thread.sleep(50);
+        queue.stop();
+        watcher.join(5000);
+        queue.close();
+
+        Assertions.assertTrue(Files.exists(done));
+        Assertions.assertFalse(Files.exists(inbox.resolve("nightly.epub")));
+        Assertions.assertTrue(TestEpub.readEntry(out.resolve("nightly_RU.epub"), "OEBPS/ch1.xhtml").contains("NIGHTLY BOOK."));
+        Assertions.assertTrue(Files.exists(out.resolve("nightly_RU.epub.result.json")));
+    }
+
+    @Test
+    public void testCancelledBookAbortsItsModelRequests() throws Exception {
+        CountDownLatch received = new CountDownLatch(1);
+        CountDownLatch aborted = new CountDownLatch(1);
+        TranslateService service = startHangingStub(received, aborted);
+
+        Path book = TestEpub.write(dir.resolve("slow.epub"), "<p>Slow book.</p>");
+        Path output = JobQueue.outputFor(book, null, "RU");
+        JobQueue queue = new JobQueue(new EpubProcessor(), service, 1);
+        CompletableFuture<JobResult> result = queue.submit(book, output);
+        Assertions.assertTrue(received.await(5, TimeUnit.SECONDS));
+        queue.cancel(book);
+
+        Assertions.assertEquals(JobResult.FAILED, result.get(5, TimeUnit.SECONDS).getStatus());
+        // Соединение с моделью закрыто клиентом, а не брошено висеть
+        Assertions.assertTrue(aborted.await(5, TimeUnit.SECONDS));
+        queue.close();
+        service.close();
+        Assertions.assertFalse(Files.exists(output));
+        // Журнал остался — повторная постановка продолжит книгу
+        Assertions.assertTrue(Files.exists(Path.of(output + ".journal")));
+    }
+
+    @Test
+    public void testCancelAllAbortsRunningAndQueuedBooks() throws Exception {
+        CountDownLatch received = new CountDownLatch(1);
+        CountDownLatch aborted = new CountDownLatch(1);
+        TranslateService service = startHangingStub(received, aborted);
+
+        Path first = TestEpub.write(dir.resolve("first.epub"), "<p>First book.</p>");
+        Path second = TestEpub.write(dir.resolve("second.epub"), "<p>Second book.</p>");
+        JobQueue queue = new JobQueue(new EpubProcessor(), service, 1);
+        CompletableFuture<JobResult> running = queue.submit(first, JobQueue.outputFor(first, null, "RU"));
+        CompletableFuture<JobResult> queued = queue.submit(second, JobQueue.outputFor(second, null, "RU"));
+        Assertions.assertTrue(received.await(5, TimeUnit.SECONDS));
+
+        long started = System.currentTimeMillis();
+        queue.cancelAll(5000);
+        Assertions.assertTrue(System.currentTimeMillis() - started < 5000);
+        Assertions.assertTrue(aborted.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(JobResult.FAILED, running.get(1, TimeUnit.SECONDS).getStatus());
+        Assertions.assertEquals(JobResult.FAILED, queued.get(1, TimeUnit.SECONDS).getStatus());
+        Assertions.assertEquals(0, queue.pending());
+        service.close();
+        // Вторая книга так и не начиналась
+        Assertions.assertFalse(Files.exists(dir.resolve("second_RU.epub.journal")));
+    }
+
+    // Модель "думает" дольше, чем длится тест, и шлёт пробелы, пока клиент не закроет соединение
+    private TranslateService startHangingStub(CountDownLatch received, CountDownLatch aborted) throws Exception {
+        stub = OllamaStub.withHandler(1, exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            received.countDown();
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < 1500; i++) {
+                    out.write(' ');
+                    out.flush();
+                    Thread.sleep(20);
+                }
+            } catch (IOException e) {
+                aborted.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        return stub.service();
+    }
+}
@@ -0,0 +1,119 @@
+package com.translator;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.translator.core.EpubProcessor;
+import com.translator.service.BatchProtocol;
+import com.translator.service.EndpointPool;
+import com.translator.service.ModelEndpoint;
+import com.translator.service.TranslateService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class JsonProtocolTest {
+
+    @TempDir
+    Path dir;
+    private OllamaStub stub;
+
+    @AfterEach
+    public void stopStub() {
+        if (stub != null) stub.close();
+    }
+
+    // Заглушка с format: отвечает {"segments":[...]} в верхнем регистре, но в пакетах из 2+ сегментов пропускает первый
+    private TranslateService startSkippingStub(boolean streaming, ConcurrentLinkedQueue<JsonObject> requests) throws Exception {
+        if (streaming) {
+            stub = OllamaStub.streaming(1, request -> {
+                String content = skipFirst(request, requests);
+                List<JsonObject> chunks = new ArrayList<>();
+                for (int i = 0; i < content.length(); i += 7) {
+                    chunks.add(OllamaStub.chunk(content.substring(i, Math.min(content.length(), i + 7)), false));
+                }
+                chunks.add(OllamaStub.chunk("", true));
+                return chunks;
+            });
+        } else {
+            stub = OllamaStub.start(1, request -> OllamaStub.reply(skipFirst(request, requests)));
+        }
+        return new TranslateService(new EndpointPool(List.of(new ModelEndpoint(stub.url(), 1)), 1000), 0, 8192, streaming,
+                BatchProtocol.JSON);
+    }
+
+    private static String skipFirst(JsonObject request, ConcurrentLinkedQueue<JsonObject> requests) {
+        requests.add(request);
+        JsonArray items = JsonParser.parseString(OllamaStub.lastMessage(request)).getAsJsonArray();
+        if (items.size() >= 2) items.remove(0);
+        for (int i = 0; i < items.size(); i++) {
+            JsonObject item = items.get(i).getAsJsonObject();
+            item.addProperty("text", item.get("text").getAsString().trim().toUpperCase(Locale.ROOT));
+        }
+        JsonObject answer = new JsonObject();
+        answer.add("segments", items);
+        return answer.toString();
+    }
+
+    @Test
+    public void testDecodeMatchesById() {
+        String answer = "{\"segments\":[{\"id\":2,\"text\":\"C {\\\"quoted\\\"} ]\"},{\"id\":0,\"text\":\" A \"}]}";
+        Assertions.assertEquals(Arrays.asList("A", null, "C {\"quoted\"} ]"), BatchProtocol.JSON.decode(answer, 3));
+    }
+
+    @Test
+    public void testDecodeKeepsCompleteItemsOfTruncatedAnswer() {
+        String answer = "{\"segments\":[{\"id\":0,\"text\":\"A\"},{\"id\":1,\"text\":\"B\"},{\"id\":2,\"text\":\"C is cu";
+        Assertions.assertEquals(Arrays.asList("A", "B", null), BatchProtocol.JSON.decode(answer, 3));
+    }
+
+    @Test
+    public void testEncodeRoundTrip() {
+        String request = BatchProtocol.JSON.encode(List.of("Hello, \"world\"", "Line\nbreak"));
+        JsonArray items = JsonParser.parseString(request).getAsJsonArray();
+        Assertions.assertEquals(1, items.get(1).getAsJsonObject().get("id").getAsInt());
+        Assertions.assertEquals("Line\nbreak", items.get(1).getAsJsonObject().get("text").getAsString());
+    }
+
+    @Test
+    public void testMissingSegmentIsRequestedAlone() throws Exception {
+        checkMissingSegmentIsRequestedAlone(false);
+    }
+
+    @Test
+    public void testMissingSegmentIsRequestedAloneWhenStreaming() throws Exception {
+        checkMissingSegmentIsRequestedAlone(true);
+    }
+
+    private void checkMissingSegmentIsRequestedAlone(boolean streaming) throws Exception {
+        ConcurrentLinkedQueue<JsonObject> requests = new ConcurrentLinkedQueue<>();
+        TranslateService service = startSkippingStub(streaming, requests);
+        Path input = TestEpub.write(dir.resolve("book.epub"),
+                "<p>First paragraph.</p><p>Second paragraph.</p><p>Third <b>bold</b> paragraph.</p><p>Fourth one.</p>");
+        Path output = dir.resolve("book_RU.epub");
+
+        new EpubProcessor().process(input.toString(), output.toString(), service);
+
+        String chapter = TestEpub.readEntry(output, "OEBPS/ch1.xhtml");
+        Assertions.assertTrue(chapter.contains("<p>FIRST PARAGRAPH.</p>"), chapter);
+        Assertions.assertTrue(chapter.contains("<p>THIRD <b>BOLD</b> PARAGRAPH.</p>"), chapter);
+        Assertions.assertTrue(chapter.contains("<p>FOURTH ONE.</p>"), chapter);
+        // Остальные сегменты вставлены по id, переспрошен только пропущенный — без деления пополам
+        Assertions.assertEquals(2, requests.size());
+        JsonObject first = requests.peek();
+        Assertions.assertEquals("object", first.getAsJsonObject("format").get("type").getAsString());
+        String prompt = first.getAsJsonArray("messages").get(0).getAsJsonObject().get("content").getAsString();
+        Assertions.assertTrue(prompt.contains("JSON"), prompt);
+        Assertions.assertFalse(prompt.contains("[[[...]]]"), prompt);
+        Assertions.assertFalse(Files.exists(dir.resolve("book_RU.epub.journal")));
+    }
+}
@@ -0,0 +1,63 @@
+package com.translator;
+
+import com.google.gson.JsonObject;
+import com.translator.metrics.Histogram;
+import com.translator.metrics.Metrics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MetricsTest {
+
+    @Test
+    public void testHistogramQuantiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 90; i++) histogram.record(80);
+        for (int i = 0; i < 10; i++) histogram.record(7_000);
+
+        Assertions.assertEquals(100, histogram.getCount());
+        // Квантиль — верхняя граница корзины (50 мс, 100 мс]
+        Assertions.assertEquals(100, histogram.quantile(0.5));
+        // p95 попадает в корзину (5 с, 10 с], но оценка не превышает максимума
+        Assertions.assertEquals(7_000, histogram.quantile(0.95));
+        Assertions.assertEquals(7_000, histogram.getMaxMillis());
+        Assertions.assertEquals(0, new Histogram().quantile(0.5));
+    }
+
+    @Test
+    public void testTokensPerSecondUsesOllamaCounters() {
+        Metrics metrics = new Metrics();
+        metrics.endpointAcquired("http://gpu1:11434", 0, false);
+        metrics.requestFinished("http://gpu1:11434", 3_000, 1_000, 500, 200_000_000L, 300, 2_000_000_000L, false, false);
+        metrics.endpointAcquired("http://gpu2:11434", 0, true);
+        metrics.requestFinished("http://gpu2:11434", 60_000, -1, 0, 0, 0, 0, false, false);
+
+        Assertions.assertEquals(150.0, metrics.tokensPerSecond(), 0.001);
+        JsonObject json = metrics.toJson();
+        Assertions.assertEquals(1, json.get("retries").getAsInt());
+        JsonObject gpu1 = json.getAsJsonObject("endpoints").getAsJsonObject("http://gpu1:11434");
+        Assertions.assertEquals(150.0, gpu1.get("tokensPerSecond").getAsDouble(), 0.001);
+        Assertions.assertEquals(0, gpu1.get("inFlight").getAsInt());
+        Assertions.assertEquals(1, json.getAsJsonObject("endpoints").getAsJsonObject("http://gpu2:11434").get("failures").getAsInt());
+    }
+
+    @Test
+    public void testPrometheusTextHasCumulativeBuckets() {
+        Metrics metrics = new Metrics();
+        metrics.batchQueued();
+        metrics.batchStarted(5);
+        metrics.batchFinished(200, 10, 4_000);
+        metrics.batchQueued();
+        metrics.batchStarted(5);
+        metrics.batchFinished(20_000, 10, 4_000);
+        Metrics.ChapterTimer timer = metrics.startChapter("Book \"One\"", "ch1.xhtml");
+        timer.lap(Metrics.Phase.READ);
+        metrics.finishChapter(timer);
+
+        String text = metrics.toPrometheus();
+        Assertions.assertTrue(text.contains("epub_batches_total 2\n"), text);
+        Assertions.assertTrue(text.contains("epub_batch_latency_seconds_bucket{le=\"0.250\"} 1\n"), text);
+        Assertions.assertTrue(text.contains("epub_batch_latency_seconds_bucket{le=\"+Inf\"} 2\n"), text);
+        Assertions.assertTrue(text.contains("epub_batch_latency_seconds_count 2\n"), text);
+        Assertions.assertTrue(text.contains("epub_chapter_seconds{book=\"Book \\\"One\\\"\",chapter=\"ch1.xhtml\",phase=\"read\"}"), text);
+    }
+}
@@ -0,0 +1,119 @@
+package com.translator;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.translator.service.EndpointPool;
+import com.translator.service.ModelEndpoint;
+import com.translator.service.TranslateService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Заглушка Ollama {@code /api/chat} на свободном порту. Ответ строит функция от JSON запроса;
+ * null вместо ответа — HTTP 500. Запросы обрабатываются параллельно, как слоты настоящего сервера.
+ */
+public class OllamaStub implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService handlers = Executors.newCachedThreadPool();
+    private final int slots;
+
+    private OllamaStub(int slots, HttpHandler handler) throws IOException {
+        this.slots = slots;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(handlers);
+        server.createContext("/api/chat", handler);
+        server.start();
+    }
+
+    /** Обычный ответ одним JSON — как правило, {@link #reply}. */
+    public static OllamaStub start(int slots, Function<JsonObject, JsonObject> respond) throws IOException {
+        return new OllamaStub(slots, exchange -> {
+            JsonObject response = respond.apply(readRequest(exchange));
+            byte[] body = response == null ? new byte[0] : response.toString().getBytes(StandardCharsets.UTF_8);
+            send(exchange, response == null ? 500 : 200, body);
+        });
+    }
+
+    /** Потоковый ответ: строки NDJSON, каждая отправляется сразу ({@link #chunk}). */
+    public static OllamaStub streaming(int slots, Function<JsonObject, List<JsonObject>> respond) throws IOException {
+        return new OllamaStub(slots, exchange -> {
+            List<JsonObject> chunks = respond.apply(readRequest(exchange));
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (JsonObject chunk : chunks) {
+                    out.write((chunk + "\n").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+            } catch (IOException ignored) {
+                // клиент оборвал поток
+            }
+        });
+    }
+
+    /** Свой обработчик — когда тесту нужен сам обмен: зависший ответ, обрыв соединения. */
+    public static OllamaStub withHandler(int slots, HttpHandler handler) throws IOException {
+        return new OllamaStub(slots, handler);
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /** Сервис на этом сервере: один сервер со {@code slots} слотами, без повторов. */
+    public TranslateService service() {
+        return new TranslateService(new EndpointPool(List.of(new ModelEndpoint(url(), slots)), 1000), 0);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        // Зависшие обработчики прерываются, а не держат потоки до конца прогона
+        handlers.shutdownNow();
+    }
+
+    /** Текст пакета — последнее сообщение запроса. */
+    public static String lastMessage(JsonObject request) {
+        JsonArray messages = request.getAsJsonArray("messages");
+        return messages.get(messages.size() - 1).getAsJsonObject().get("content").getAsString();
+    }
+
+    public static JsonObject reply(String content) {
+        return chunk(content, true);
+    }
+
+    public static JsonObject chunk(String content, boolean done) {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", "assistant");
+        message.addProperty("content", content);
+        JsonObject response = new JsonObject();
+        response.add("message", message);
+        response.addProperty("done", done);
+        return response;
+    }
+
+    private static JsonObject readRequest(HttpExchange exchange) throws IOException {
+        return JsonParser.parseString(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8))
+                .getAsJsonObject();
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        } catch (IOException ignored) {
+            // клиент уже закрыл соединение
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.translator;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpServer;
+import com.translator.config.AppConfig;
+import com.translator.service.BatchProtocol;
+import com.translator.service.EndpointPool;
+import com.translator.service.ModelEndpoint;
+import com.translator.service.OpenAiBackend;
+import com.translator.service.PooledBackend;
+import com.translator.service.TranslationResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class OpenAiBackendTest {
+
+    private HttpServer server;
+
+    @AfterEach
+    public void stopServer() {
+        if (server != null) server.stop(0);
+    }
+
+    // Заглушка /v1/chat/completions: переводит в верхний регистр, поток — SSE кусками по 5 символов
+    private OpenAiBackend startStub(boolean streaming, ConcurrentLinkedQueue<JsonObject> requests) throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            JsonObject request = JsonParser.parseString(
+                    new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)).getAsJsonObject();
+            requests.add(request);
+            JsonArray messages = request.getAsJsonArray("messages");
+            String answer = messages.get(messages.size() - 1).getAsJsonObject()
+                    .get("content").getAsString().trim().toUpperCase(Locale.ROOT);
+            boolean stream = request.has("stream") && request.get("stream").getAsBoolean();
+            StringBuilder body = new StringBuilder();
+            if (stream) {
+                exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+                for (int i = 0; i < answer.length(); i += 5) {
+                    body.append("data: ").append(chunk(answer.substring(i, Math.min(answer.length(), i + 5)), null)).append("\n\n");
+                }
+                body.append("data: ").append(chunk(null, "stop")).append("\n\n").append("data: [DONE]\n\n");
+            } else {
+                JsonObject message = new JsonObject();
+                message.addProperty("role", "assistant");
+                message.addProperty("content", answer);
+                JsonObject choice = new JsonObject();
+                choice.addProperty("index", 0);
+                choice.add("message", message);
+                choice.addProperty("finish_reason", "stop");
+                JsonArray choices = new JsonArray();
+                choices.add(choice);
+                JsonObject usage = new JsonObject();
+                usage.addProperty("prompt_tokens", 120);
+                usage.addProperty("completion_tokens", 30);
+                usage.addProperty("total_tokens", 150);
+                JsonObject response = new JsonObject();
+                response.addProperty("id", "stub");
+                response.add("choices", choices);
+                response.add("usage", usage);
+                body.append(response);
+            }
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/v1";
+        return new OpenAiBackend(new EndpointPool(List.of(new ModelEndpoint(url, 4)), 1000), 0, 8192, streaming,
+                "qwen2.5", "Translate into German.", BatchProtocol.SEPARATOR, "test-key", Duration.ofSeconds(10));
+    }
+
+    private static JsonObject chunk(String content, String finishReason) {
+        JsonObject delta = new JsonObject();
+        if (content != null) delta.addProperty("content", content);
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("delta", delta);
+        if (finishReason != null) choice.addProperty("finish_reason", finishReason);
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+        JsonObject json = new JsonObject();
+        json.addProperty("id", "stub");
+        json.add("choices", choices);
+        return json;
+    }
+
+    @Test
+    public void testRequestCarriesConfiguredModelAndPrompt() throws Exception {
+        ConcurrentLinkedQueue<JsonObject> requests = new ConcurrentLinkedQueue<>();
+        OpenAiBackend backend = startStub(false, requests);
+        try {
+            TranslationResult result = backend.requestBatch("Hello [[[...]]] world [[[...]]] ");
+
+            Assertions.assertEquals("HELLO [[[...]]] WORLD [[[...]]]", result.getContent());
+            Assertions.assertEquals(120, result.getPromptEvalCount());
+            Assertions.assertEquals(30, result.getEvalCount());
+            JsonObject request = requests.peek();
+            Assertions.assertEquals("qwen2.5", request.get("model").getAsString());
+            JsonObject system = request.getAsJsonArray("messages").get(0).getAsJsonObject();
+            Assertions.assertEquals("system", system.get("role").getAsString());
+            Assertions.assertEquals("Translate into German.", system.get("content").getAsString());
+        } finally {
+            backend.close();
+        }
+    }
+
+    @Test
+    public void testStreamingDeliversSegmentsAsTheyArrive() throws Exception {
+        OpenAiBackend backend = startStub(true, new ConcurrentLinkedQueue<>());
+        try {
+            List<String> segments = new ArrayList<>();
+            TranslationResult result = backend.requestBatchStreaming("Chapter 1 [[[...]]] Hello [[[...]]] world [[[...]]] ",
+                    (index, text) -> segments.add(text));
+
+            Assertions.assertEquals(List.of("CHAPTER 1", "HELLO", "WORLD"), segments);
+            Assertions.assertFalse(result.isAborted());
+            Assertions.assertTrue(result.getEvalCount() > 0);
+        } finally {
+            backend.close();
+        }
+    }
+
+    @Test
+    public void testPromptFollowsLanguagePair() {
+        Properties props = new Properties();
+        String russian = PooledBackend.systemPrompt(new AppConfig(props), BatchProtocol.SEPARATOR);
+        // Прежний промпт слово в слово — иначе память переводов перестала бы находить старые сегменты
+        Assertions.assertTrue(russian.startsWith(
+                "You are an expert literary translator. Translate the provided book text into Russian.\n"));
+        Assertions.assertTrue(russian.contains("3. Use professional, novel-style Russian.\n"));
+
+        props.setProperty("translation.source.language", "English");
+        props.setProperty("translation.target.language", "Ukrainian");
+        String ukrainian = PooledBackend.systemPrompt(new AppConfig(props), BatchProtocol.SEPARATOR);
+        Assertions.assertTrue(ukrainian.contains("Translate the provided book text from English into Ukrainian."));
+        Assertions.assertFalse(ukrainian.contains("Russian"));
+    }
+}
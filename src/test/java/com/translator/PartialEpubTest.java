@@ -0,0 +1,150 @@
+package com.translator;
+
+import com.translator.core.BookProgress;
+import com.translator.core.EpubProcessor;
+import com.translator.epub.PartialEpub;
+import com.translator.epub.RawZipWriter;
+import com.translator.service.TranslateService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class PartialEpubTest {
+
+    @TempDir
+    Path dir;
+    private OllamaStub stub;
+
+    @AfterEach
+    public void stopStub() {
+        if (stub != null) stub.close();
+    }
+
+    @Test
+    public void testSnapshotIsReadableAndReplacementWins() throws Exception {
+        Path file = dir.resolve("book.zip");
+        try (RawZipWriter writer = new RawZipWriter(file, true)) {
+            writer.putStored("mimetype", "application/epub+zip".getBytes(StandardCharsets.US_ASCII), 0, 0);
+            writer.putDeflated("ch1.xhtml", "original".getBytes(StandardCharsets.UTF_8), 0, 0);
+            writer.snapshot();
+            Assertions.assertEquals("original", TestEpub.readEntry(file, "ch1.xhtml"));
+
+            writer.putDeflated("ch1.xhtml", "translated".getBytes(StandardCharsets.UTF_8), 0, 0);
+            writer.snapshot();
+            Assertions.assertEquals("translated", TestEpub.readEntry(file, "ch1.xhtml"));
+            Assertions.assertEquals("application/epub+zip", TestEpub.readEntry(file, "mimetype"));
+        }
+    }
+
+    @Test
+    public void testFileStaysReadableBetweenPublications() throws Exception {
+        Path file = dir.resolve("book.epub");
+        PartialEpub partial = new PartialEpub(file, 60_000);
+        try {
+            partial.put("mimetype", "application/epub+zip".getBytes(StandardCharsets.US_ASCII), 0, 0);
+            partial.put("ch1.xhtml", "original 1".getBytes(StandardCharsets.UTF_8), 0, 0);
+            partial.put("ch2.xhtml", "original 2".getBytes(StandardCharsets.UTF_8), 0, 0);
+            partial.publish();
+
+            // Интервал не вышел и начало книги не продлено — публикации нет, но файл целый
+            partial.chapterDone("ch2.xhtml", "translated 2".getBytes(StandardCharsets.UTF_8), 0, 0, false);
+            Assertions.assertEquals("original 2", TestEpub.readEntry(file, "ch2.xhtml"));
+            // Глава больше буфера записи и почти не сжимается — без публикации она всё равно не должна попасть на диск
+            StringBuilder large = new StringBuilder();
+            Random random = new Random(1);
+            while (large.length() < 200_000) large.append(Long.toString(random.nextLong(), 36));
+            partial.chapterDone("ch1.xhtml", large.toString().getBytes(StandardCharsets.UTF_8), 0, 0, false);
+            Assertions.assertEquals("original 1", TestEpub.readEntry(file, "ch1.xhtml"));
+
+            partial.publish();
+            Assertions.assertEquals("translated 2", TestEpub.readEntry(file, "ch2.xhtml"));
+            Assertions.assertEquals(large.toString(), TestEpub.readEntry(file, "ch1.xhtml"));
+        } finally {
+            partial.close();
+        }
+    }
+
+    @Test
+    public void testFinishedChaptersArePublishedWhileTheRestIsTranslating() throws Exception {
+        // Заглушка переводит в верхний регистр, но третью главу держит, пока тест не проверит частичную книгу
+        CountDownLatch release = new CountDownLatch(1);
+        stub = OllamaStub.start(2, request -> {
+            String text = OllamaStub.lastMessage(request);
+            if (text.contains("Third")) {
+                try {
+                    release.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return OllamaStub.reply(text.toUpperCase());
+        });
+        TranslateService service = stub.service();
+
+        Path input = TestEpub.write(dir.resolve("book.epub"),
+                "<p>First chapter.</p>", "<p>Second chapter.</p>", "<p>Third chapter.</p>");
+        Path output = dir.resolve("book_RU.epub");
+        Path partial = PartialEpub.pathFor(output.toString());
+        EpubProcessor processor = new EpubProcessor();
+
+        try {
+            CompletableFuture<Void> run = CompletableFuture.runAsync(() -> {
+                try {
+                    processor.process(input.toString(), output.toString(), service);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            long deadline = System.currentTimeMillis() + 20_000;
+            String second = null;
+            while (System.currentTimeMillis() < deadline) {
+                second = readQuietly(partial, "OEBPS/ch2.xhtml");
+                if (second != null && second.contains("SECOND CHAPTER.")) break;
+                Thread.sleep(20);
+            }
+            Assertions.assertNotNull(second);
+            Assertions.assertTrue(second.contains("<p>SECOND CHAPTER.</p>"), second);
+            Assertions.assertTrue(TestEpub.readEntry(partial, "OEBPS/ch1.xhtml").contains("<p>FIRST CHAPTER.</p>"));
+            // Непереведённая глава лежит в оригинале, остальное содержимое книги на месте
+            Assertions.assertTrue(TestEpub.readEntry(partial, "OEBPS/ch3.xhtml").contains("<p>Third chapter.</p>"));
+            Assertions.assertNotNull(TestEpub.readEntry(partial, "OEBPS/images/pic.png"));
+
+            BookProgress progress = processor.getRunningBooks().get(0);
+            Assertions.assertEquals(2, progress.getReadyPrefix());
+            Assertions.assertEquals(BookProgress.State.TRANSLATING, progress.getChapters().get(2).getState());
+            Assertions.assertEquals(1, progress.getChapters().get(0).getSettled());
+
+            release.countDown();
+            run.get(20, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            service.close();
+        }
+
+        Assertions.assertTrue(TestEpub.readEntry(output, "OEBPS/ch3.xhtml").contains("<p>THIRD CHAPTER.</p>"));
+        // Книга готова целиком — частичная больше не нужна
+        Assertions.assertFalse(Files.exists(partial));
+        Assertions.assertTrue(processor.getRunningBooks().isEmpty());
+    }
+
+    // До первой публикации файла нет, а пока публикация пишет главы, нет каталога — такой момент пропускаем
+    private static String readQuietly(Path epub, String name) {
+        if (!Files.exists(epub)) return null;
+        try {
+            return TestEpub.readEntry(epub, name);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.translator;
+
+import com.google.gson.JsonObject;
+import com.translator.core.AdaptiveBatcher;
+import com.translator.core.BookPlan;
+import com.translator.core.EpubProcessor;
+import com.translator.core.TranslationMemory;
+import com.translator.service.TranslateService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PlanTest {
+
+    @TempDir
+    Path dir;
+    private OllamaStub stub;
+
+    @AfterEach
+    public void stopStub() {
+        if (stub != null) stub.close();
+    }
+
+    @Test
+    public void testPlanCountsSegmentsAndEstimatesTimeFromOneCalibrationRequest() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        stub = OllamaStub.start(2, request -> {
+            requests.incrementAndGet();
+            // Промпт 1000 ток/с, генерация 50 ток/с
+            JsonObject response = OllamaStub.reply("Привет, мир.");
+            response.addProperty("prompt_eval_count", 200);
+            response.addProperty("prompt_eval_duration", 200_000_000L);
+            response.addProperty("eval_count", 100);
+            response.addProperty("eval_duration", 2_000_000_000L);
+            return response;
+        });
+        TranslateService service = stub.service();
+
+        Path input = TestEpub.write(dir.resolve("book.epub"),
+                "<p>Hello world.</p><p>Second line here.</p><p>* * *</p>",
+                "<p>Hello world.</p><p>Cached line.</p><pre>int x = 1;</pre>");
+        TranslationMemory memory = new TranslationMemory(dir.resolve("memory"), 10);
+        memory.store("Cached line.", service.getModel(), service.getSystemPrompt(), "Строка из памяти.");
+
+        BookPlan plan = new EpubProcessor(memory).plan(input.toString(), service);
+
+        Assertions.assertEquals(2, plan.getChapters().size());
+        BookPlan.Chapter first = plan.getChapters().get(0);
+        Assertions.assertEquals(2, first.getSegments());
+        Assertions.assertEquals(1, first.getBatches());
+        Assertions.assertTrue(first.getInputTokens() > 0 && first.getOutputTokens() > 0);
+        // Во второй главе один сегмент из памяти и один повтор первой — модели уходить нечему
+        BookPlan.Chapter second = plan.getChapters().get(1);
+        Assertions.assertEquals(2, second.getSegments());
+        Assertions.assertEquals(1, second.getMemoryHits());
+        Assertions.assertEquals(1, second.getDuplicates());
+        Assertions.assertEquals(0, second.getBatches());
+        Assertions.assertEquals(0, second.getInputTokens());
+
+        // Один замер скорости, статистика памяти не тронута, книга не записана
+        Assertions.assertEquals(1, requests.get());
+        Assertions.assertEquals(0, memory.getHits());
+        Assertions.assertFalse(Files.exists(dir.resolve("book_RU.epub")));
+        Assertions.assertEquals(50.0, plan.getCalibration().getEvalTokensPerSecond(), 0.01);
+        Assertions.assertEquals(1000.0, plan.getCalibration().getPromptTokensPerSecond(), 0.01);
+        // Каждый пакет несёт ещё и системный промпт
+        Assertions.assertEquals(AdaptiveBatcher.estimateTokens(service.getSystemPrompt()), plan.getPromptOverheadTokens());
+        double seconds = (plan.getInputTokens() + plan.getPromptOverheadTokens()) / 1000.0 + plan.getOutputTokens() / 50.0;
+        Assertions.assertEquals(seconds * 1000 / 2, plan.getEtaMillis(), 1);
+        Assertions.assertTrue(plan.format().contains("ch2.xhtml"), plan.format());
+    }
+}
@@ -0,0 +1,58 @@
+package com.translator;
+
+import com.translator.core.EpubProcessor;
+import com.translator.service.TranslateService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RecoveryTest {
+
+    @TempDir
+    Path dir;
+    private OllamaStub stub;
+
+    @AfterEach
+    public void stopStub() {
+        if (stub != null) stub.close();
+    }
+
+    // Заглушка "переводит" в верхний регистр, но в пакетах из 2+ сегментов теряет первый разделитель
+    private TranslateService startMisaligningStub(AtomicInteger calls) throws Exception {
+        stub = OllamaStub.start(1, request -> {
+            calls.incrementAndGet();
+            String text = OllamaStub.lastMessage(request).toUpperCase();
+            if (text.split("\\[\\[\\[\\.\\.\\.\\]\\]\\]").length >= 3) {
+                text = text.replaceFirst("\\[\\[\\[\\.\\.\\.\\]\\]\\]", "");
+            }
+            return OllamaStub.reply(text);
+        });
+        return stub.service();
+    }
+
+    @Test
+    public void testMisalignedBatchIsBisectedIntoAlignedPieces() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        TranslateService service = startMisaligningStub(calls);
+        Path input = TestEpub.write(dir.resolve("book.epub"),
+                "<p>First paragraph.</p><p>Second paragraph.</p><p>Third <b>bold</b> paragraph.</p><p>Fourth one.</p>");
+        Path output = dir.resolve("book_RU.epub");
+
+        new EpubProcessor().process(input.toString(), output.toString(), service);
+
+        String chapter = TestEpub.readEntry(output, "OEBPS/ch1.xhtml");
+        Assertions.assertTrue(chapter.contains("<p>FIRST PARAGRAPH.</p>"), chapter);
+        Assertions.assertTrue(chapter.contains("<p>SECOND PARAGRAPH.</p>"), chapter);
+        // Краевые пробелы вокруг тегов сохраняются
+        Assertions.assertTrue(chapter.contains("<p>THIRD <b>BOLD</b> PARAGRAPH.</p>"), chapter);
+        Assertions.assertTrue(chapter.contains("<p>FOURTH ONE.</p>"), chapter);
+        // Шесть сегментов: 6 -> 3+3 -> (1 + 2 -> 1+1) x 2 = 11 запросов, в пределах бюджета по умолчанию
+        Assertions.assertEquals(11, calls.get());
+        Assertions.assertFalse(Files.exists(dir.resolve("book_RU.epub.journal")));
+    }
+}
@@ -0,0 +1,70 @@
+package com.translator;
+
+import com.translator.core.EpubProcessor;
+import com.translator.core.RewriteMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class SegmentFilterTest {
+
+    private static final String BODY = "<h2>XIV</h2><p>IV.</p><h3> I </h3>"
+            + "<p>MIX</p><p>DC</p><p>CD</p><p>XL</p><p>LIV</p><p>MD</p><p>I</p>"
+            + "<p><i>I</i> said so.</p><h2>XII <i>The Return</i></h2><p>Civil war.</p>";
+
+    @TempDir
+    Path dir;
+    private OllamaStub stub;
+
+    @AfterEach
+    public void stopStub() {
+        if (stub != null) stub.close();
+    }
+
+    @Test
+    public void testOnlyStandaloneNumeralsAreSkippedWithJsoup() throws Exception {
+        Assertions.assertEquals(expectedSent(), sentSegments(RewriteMode.JSOUP, BODY));
+    }
+
+    @Test
+    public void testOnlyStandaloneNumeralsAreSkippedWithSplice() throws Exception {
+        Assertions.assertEquals(expectedSent(), sentSegments(RewriteMode.SPLICE, BODY));
+    }
+
+    @Test
+    public void testDropCapIsNotSentAsAWord() throws Exception {
+        Assertions.assertEquals(Set.of("he story begins.", "A"),
+                sentSegments(RewriteMode.JSOUP, "<p><span class=\"dropcap\">T</span>he story begins.</p><p>A</p>"));
+    }
+
+    // Номер главы в заголовке и "IV." отдельным абзацем модели не уходят; слова и "I" в тексте — уходят
+    private static Set<String> expectedSent() {
+        return Set.of("MIX", "DC", "CD", "XL", "LIV", "MD", "I", "said so.", "XII", "The Return", "Civil war.");
+    }
+
+    private Set<String> sentSegments(RewriteMode mode, String chapter) throws Exception {
+        ConcurrentLinkedQueue<String> sent = new ConcurrentLinkedQueue<>();
+        stub = OllamaStub.start(1, request -> {
+            String text = OllamaStub.lastMessage(request);
+            sent.add(text);
+            return OllamaStub.reply(text.toLowerCase());
+        });
+
+        Path input = TestEpub.write(dir.resolve("book.epub"), chapter);
+        new EpubProcessor(null, mode).process(input.toString(), dir.resolve("book_RU.epub").toString(), stub.service());
+
+        Set<String> segments = new HashSet<>();
+        for (String text : sent) {
+            for (String segment : text.split("\\[\\[\\[\\.\\.\\.]]]")) {
+                if (!segment.isBlank()) segments.add(segment.strip());
+            }
+        }
+        return segments;
+    }
+}
@@ -2,36 +2,53 @@ package com.translator;
 
 import com.translator.service.TranslateService;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+
 public class ServiceTest {
 
     @Test
     public void testEmptyStringReturnsEmpty() {
         TranslateService service = new TranslateService();
-        String result = service.translate("");
+        String result = service.translateBatch("");
         Assertions.assertEquals("", result);
     }
 
     @Test
     public void testNullReturnsNull() {
         TranslateService service = new TranslateService();
-        String result = service.translate(null);
+        String result = service.translateBatch(null);
         Assertions.assertNull(result);
     }
 
-    // ВНИМАНИЕ: Этот тест делает реальный запрос в Google.
-    // Если интернета нет, он упадет.
+    // ВНИМАНИЕ: Этот тест делает реальный запрос в локальную Ollama.
+    // Если сервер не запущен, тест пропускается.
     @Test
-    public void testRealGoogleCall() {
+    public void testRealOllamaCall() {
         TranslateService service = new TranslateService();
+        Assumptions.assumeTrue(isReachable(service.getPool().getEndpoints().get(0).getBaseUrl()), "Ollama не запущена");
         String original = "Hello";
-        String result = service.translate(original);
+        String result = service.translateBatch(original);
 
-        System.out.println("Google перевел 'Hello' как: " + result);
+        System.out.println("Модель перевела 'Hello' как: " + result);
 
-        // Проверяем, что в ответе есть кириллица или слово "Привет"
-        // (Google может вернуть "Здравствуйте", так что проверяем просто на смену языка)
+        // Проверяем просто на смену языка: модель может ответить "Привет" или "Здравствуйте"
+        Assertions.assertNotNull(result);
         Assertions.assertNotEquals(original, result);
     }
-}
\ No newline at end of file
+
+    private static boolean isReachable(String baseUrl) {
+        try (Socket socket = new Socket()) {
+            URI uri = URI.create(baseUrl);
+            socket.connect(new InetSocketAddress(uri.getHost(), uri.getPort()), 500);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.translator;
+
+import com.translator.core.EpubProcessor;
+import com.translator.core.RewriteMode;
+import com.translator.service.TranslateService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class SpliceTest {
+
+    @TempDir
+    Path dir;
+    private OllamaStub stub;
+
+    @AfterEach
+    public void stopStub() {
+        if (stub != null) stub.close();
+    }
+
+    // Заглушка переводит в верхний регистр и запоминает, что ей отправили
+    private TranslateService startUppercaseStub(ConcurrentLinkedQueue<String> sent) throws Exception {
+        stub = OllamaStub.start(1, request -> {
+            String text = OllamaStub.lastMessage(request);
+            sent.add(text);
+            return OllamaStub.reply(text.toUpperCase());
+        });
+        return stub.service();
+    }
+
+    @Test
+    public void testOnlyTranslatedTextChangesAndMarkupStaysByteIdentical() throws Exception {
+        ConcurrentLinkedQueue<String> sent = new ConcurrentLinkedQueue<>();
+        TranslateService service = startUppercaseStub(sent);
+        String body = "\n  <!-- note: <p>not text</p> -->\n"
+                + "<p class='a&gt;b' title=\"x > y\">Tom &amp; Jerry&nbsp;run&#8212;fast.</p>\n"
+                + "<p>Line one<br/>line two <i>italic</i>.</p>"
+                + "<pre><code>if (a &lt; b) return;</code></pre>"
+                + "<script type=\"text/javascript\">var s = '<p>no</p>';</script>"
+                + "<p>* * *</p>";
+        Path input = TestEpub.write(dir.resolve("book.epub"), body);
+        Path output = dir.resolve("book_RU.epub");
+        String original = TestEpub.readEntry(input, "OEBPS/ch1.xhtml");
+
+        new EpubProcessor(null, RewriteMode.SPLICE).process(input.toString(), output.toString(), service);
+
+        String expected = original
+                .replace("Tom &amp; Jerry&nbsp;run&#8212;fast.", "TOM &amp; JERRY\u00A0RUN\u2014FAST.")
+                .replace("Line one<br/>line two <i>italic</i>.", "LINE ONE<br/>LINE TWO <i>ITALIC</i>.");
+        Assertions.assertEquals(expected, TestEpub.readEntry(output, "OEBPS/ch1.xhtml"));
+        // Сущности раскрыты перед отправкой; комментарий, код, скрипт и заголовок модели не уходят
+        String all = String.join("\n", sent);
+        Assertions.assertTrue(all.contains("Tom & Jerry\u00A0run\u2014fast."), all);
+        Assertions.assertFalse(all.contains("not text") || all.contains("return") || all.contains("var s")
+                || all.contains("Chapter 1"), all);
+    }
+}
@@ -0,0 +1,111 @@
+package com.translator;
+
+import com.translator.core.EpubProcessor;
+import com.translator.core.ProcessReport;
+import com.translator.service.TranslateService;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.epub.EpubWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+public class StreamingRewriteTest {
+
+    @TempDir
+    Path dir;
+    private OllamaStub stub;
+
+    @AfterEach
+    public void stopStub() {
+        if (stub != null) stub.close();
+    }
+
+    // Заглушка "переводит" в верхний регистр
+    private TranslateService startUppercaseStub() throws Exception {
+        stub = OllamaStub.start(2, request -> OllamaStub.reply(OllamaStub.lastMessage(request).toUpperCase()));
+        return stub.service();
+    }
+
+    @Test
+    public void testUntouchedEntriesAreCopiedAsIs() throws Exception {
+        TranslateService service = startUppercaseStub();
+        Path input = TestEpub.write(dir.resolve("book.epub"),
+                "<p>First chapter text.</p>", "<p>Second chapter text.</p>", "<p>Third chapter text.</p>");
+        Path output = dir.resolve("book_RU.epub");
+
+        new EpubProcessor().process(input.toString(), output.toString(), service);
+
+        Assertions.assertTrue(TestEpub.readEntry(output, "OEBPS/ch1.xhtml").contains("<p>FIRST CHAPTER TEXT.</p>"));
+        Assertions.assertTrue(TestEpub.readEntry(output, "OEBPS/ch3.xhtml").contains("<p>THIRD CHAPTER TEXT.</p>"));
+
+        try (ZipFile source = new ZipFile(input.toFile()); ZipFile result = new ZipFile(output.toFile())) {
+            for (String name : List.of("OEBPS/images/pic.png", "OEBPS/content.opf", "OEBPS/toc.ncx", "META-INF/container.xml")) {
+                ZipEntry before = source.getEntry(name);
+                ZipEntry after = result.getEntry(name);
+                Assertions.assertNotNull(after, name);
+                // Сжатые данные не пересжимались: размер и CRC совпадают
+                Assertions.assertEquals(before.getMethod(), after.getMethod(), name);
+                Assertions.assertEquals(before.getCompressedSize(), after.getCompressedSize(), name);
+                Assertions.assertEquals(before.getCrc(), after.getCrc(), name);
+                try (InputStream a = source.getInputStream(before); InputStream b = result.getInputStream(after)) {
+                    Assertions.assertArrayEquals(a.readAllBytes(), b.readAllBytes(), name);
+                }
+            }
+        }
+
+        // mimetype — первая запись и без сжатия
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(output))) {
+            ZipEntry first = zip.getNextEntry();
+            Assertions.assertEquals("mimetype", first.getName());
+            Assertions.assertEquals(ZipEntry.STORED, first.getMethod());
+        }
+        Assertions.assertFalse(Files.exists(dir.resolve("book_RU.epub.part")));
+    }
+
+    @Test
+    public void testPrefixedOpfFromEpublibIsRead() throws Exception {
+        TranslateService service = startUppercaseStub();
+        // epublib пишет OPF с префиксами opf:manifest / opf:item
+        Book book = new Book();
+        book.getMetadata().addTitle("Prefixed");
+        book.addSection("One", new Resource(("<?xml version=\"1.0\" encoding=\"UTF-8\"?><html xmlns=\"http://www.w3.org/1999/xhtml\">"
+                + "<head><title>One</title></head><body><p>Prefixed book text.</p></body></html>").getBytes(StandardCharsets.UTF_8), "one.xhtml"));
+        Path input = dir.resolve("book.epub");
+        try (OutputStream out = Files.newOutputStream(input)) {
+            new EpubWriter().write(book, out);
+        }
+        Path output = dir.resolve("book_RU.epub");
+
+        ProcessReport report = new EpubProcessor().process(input.toString(), output.toString(), service);
+
+        Assertions.assertEquals("Prefixed", report.getTitle());
+        Assertions.assertEquals(1, report.getChapters());
+        Assertions.assertTrue(TestEpub.readEntry(output, "OEBPS/one.xhtml").contains("PREFIXED BOOK TEXT."));
+    }
+
+    @Test
+    public void testUnreachableServerLeavesValidBook() throws Exception {
+        TranslateService service = startUppercaseStub();
+        stub.close();
+        stub = null;
+        Path input = TestEpub.write(dir.resolve("book.epub"), "<p>Untranslated text.</p>");
+        Path output = dir.resolve("book_RU.epub");
+
+        new EpubProcessor().process(input.toString(), output.toString(), service);
+
+        Assertions.assertTrue(TestEpub.readEntry(output, "OEBPS/ch1.xhtml").contains("<p>Untranslated text.</p>"));
+        Assertions.assertNotNull(TestEpub.readEntry(output, "OEBPS/images/pic.png"));
+    }
+}
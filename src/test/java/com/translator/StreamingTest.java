@@ -0,0 +1,73 @@
+package com.translator;
+
+import com.google.gson.JsonObject;
+import com.translator.service.EndpointPool;
+import com.translator.service.ModelEndpoint;
+import com.translator.service.StreamListener;
+import com.translator.service.TranslateService;
+import com.translator.service.TranslationResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class StreamingTest {
+
+    private OllamaStub stub;
+
+    @AfterEach
+    public void stopStub() {
+        if (stub != null) stub.close();
+    }
+
+    // Заглушка потокового /api/chat: отдаёт ответ кусками по 5 символов; обрыв клиентом — это и проверяем
+    private TranslateService startStub(String answer) throws Exception {
+        stub = OllamaStub.streaming(1, request -> {
+            List<JsonObject> chunks = new ArrayList<>();
+            for (int i = 0; i < answer.length(); i += 5) {
+                chunks.add(OllamaStub.chunk(answer.substring(i, Math.min(answer.length(), i + 5)), false));
+            }
+            JsonObject last = OllamaStub.chunk("", true);
+            last.addProperty("eval_count", 42);
+            chunks.add(last);
+            return chunks;
+        });
+        return new TranslateService(new EndpointPool(List.of(new ModelEndpoint(stub.url(), 1)), 1000), 0, 8192, true);
+    }
+
+    @Test
+    public void testSegmentsArriveInOrderWithoutPreamble() throws Exception {
+        TranslateService service = startStub("Here is the translation:\nГлава 1 [[[...]]] Привет [[[...]]] мир [[[...]]]");
+        List<String> segments = new ArrayList<>();
+
+        TranslationResult result = service.requestBatchStreaming("Chapter 1 [[[...]]] Hello [[[...]]] world [[[...]]] ",
+                (index, text) -> {
+                    Assertions.assertEquals(segments.size(), index);
+                    return segments.add(text);
+                });
+
+        Assertions.assertEquals(List.of("Глава 1", "Привет", "мир"), segments);
+        Assertions.assertFalse(result.isAborted());
+        Assertions.assertEquals(42, result.getEvalCount());
+        Assertions.assertTrue(result.getFirstSegmentMillis() >= 0);
+    }
+
+    @Test
+    public void testListenerCanAbortGeneration() throws Exception {
+        TranslateService service = startStub("один [[[...]]] два [[[...]]] три [[[...]]] четыре [[[...]]]");
+        List<String> segments = new ArrayList<>();
+
+        TranslationResult result = service.requestBatchStreaming("one [[[...]]] two [[[...]]] ", new StreamListener() {
+            @Override
+            public boolean onSegment(int index, String text) {
+                if (index >= 2) return false;
+                return segments.add(text);
+            }
+        });
+
+        Assertions.assertEquals(List.of("один", "два"), segments);
+        Assertions.assertTrue(result.isAborted());
+    }
+}
@@ -0,0 +1,89 @@
+package com.translator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/** Минимальная EPUB-книга для тестов: главы с заданным телом и одна картинка. */
+public class TestEpub {
+
+    public static Path write(Path file, String... bodies) throws IOException {
+        Map<String, String> chapters = new LinkedHashMap<>();
+        for (int i = 0; i < bodies.length; i++) {
+            chapters.put("ch" + (i + 1) + ".xhtml", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><title>Chapter " + (i + 1) + "</title></head>"
+                    + "<body>" + bodies[i] + "</body></html>");
+        }
+
+        StringBuilder manifest = new StringBuilder("<item id=\"ncx\" href=\"toc.ncx\" media-type=\"application/x-dtbncx+xml\"/>"
+                + "<item id=\"img\" href=\"images/pic.png\" media-type=\"image/png\"/>");
+        StringBuilder spine = new StringBuilder();
+        StringBuilder navPoints = new StringBuilder();
+        int order = 1;
+        for (String href : chapters.keySet()) {
+            String id = href.replace(".xhtml", "");
+            manifest.append("<item id=\"").append(id).append("\" href=\"").append(href).append("\" media-type=\"application/xhtml+xml\"/>");
+            spine.append("<itemref idref=\"").append(id).append("\"/>");
+            navPoints.append("<navPoint id=\"np").append(order).append("\" playOrder=\"").append(order).append("\"><navLabel><text>")
+                    .append(id).append("</text></navLabel><content src=\"").append(href).append("\"/></navPoint>");
+            order++;
+        }
+        String opf = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<package xmlns=\"http://www.idpf.org/2007/opf\" version=\"2.0\" unique-identifier=\"id\">"
+                + "<metadata xmlns:dc=\"http://purl.org/dc/elements/1.1/\"><dc:title>Test Book</dc:title>"
+                + "<dc:identifier id=\"id\">test-book</dc:identifier><dc:language>en</dc:language></metadata>"
+                + "<manifest>" + manifest + "</manifest><spine toc=\"ncx\">" + spine + "</spine></package>";
+        String ncx = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<ncx xmlns=\"http://www.daisy.org/z3986/2005/ncx/\" version=\"2005-1\"><head/>"
+                + "<docTitle><text>Test Book</text></docTitle><navMap>" + navPoints + "</navMap></ncx>";
+        String container = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<container version=\"1.0\" xmlns=\"urn:oasis:names:tc:opendocument:xmlns:container\"><rootfiles>"
+                + "<rootfile full-path=\"OEBPS/content.opf\" media-type=\"application/oebps-package+xml\"/></rootfiles></container>";
+
+        try (OutputStream out = Files.newOutputStream(file); ZipOutputStream zip = new ZipOutputStream(out)) {
+            byte[] mimetype = "application/epub+zip".getBytes(StandardCharsets.US_ASCII);
+            ZipEntry entry = new ZipEntry("mimetype");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(mimetype.length);
+            CRC32 crc = new CRC32();
+            crc.update(mimetype);
+            entry.setCrc(crc.getValue());
+            zip.putNextEntry(entry);
+            zip.write(mimetype);
+            zip.closeEntry();
+
+            put(zip, "META-INF/container.xml", container.getBytes(StandardCharsets.UTF_8));
+            put(zip, "OEBPS/content.opf", opf.getBytes(StandardCharsets.UTF_8));
+            put(zip, "OEBPS/toc.ncx", ncx.getBytes(StandardCharsets.UTF_8));
+            for (Map.Entry<String, String> chapter : chapters.entrySet()) {
+                put(zip, "OEBPS/" + chapter.getKey(), chapter.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+            byte[] image = new byte[4096];
+            for (int i = 0; i < image.length; i++) image[i] = (byte) (i * 31);
+            put(zip, "OEBPS/images/pic.png", image);
+        }
+        return file;
+    }
+
+    public static String readEntry(Path epub, String name) throws IOException {
+        try (ZipFile zip = new ZipFile(epub.toFile())) {
+            ZipEntry entry = zip.getEntry(name);
+            if (entry == null) return null;
+            return new String(zip.getInputStream(entry).readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void put(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(data);
+        zip.closeEntry();
+    }
+}
@@ -0,0 +1,85 @@
+package com.translator;
+
+import com.translator.core.TranslationJournal;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+public class TranslationJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testRestartSeesBatchesAndChapters() throws Exception {
+        Path file = dir.resolve("book_RU.epub.journal");
+
+        try (TranslationJournal journal = TranslationJournal.open(file)) {
+            journal.recordBatch("ch1.xhtml", List.of("Hello", "World"), List.of("Привет", "Мир"));
+            journal.recordChapter("ch0.xhtml", "<html><body>Готово</body></html>");
+        }
+        // Имитируем оборванную при сбое запись
+        Files.writeString(file, "{\"href\":\"ch2.xhtml\",\"xht", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (TranslationJournal resumed = TranslationJournal.open(file)) {
+            Assertions.assertEquals("Мир", resumed.completedSegment("ch1.xhtml", "World"));
+            Assertions.assertNull(resumed.completedSegment("ch1.xhtml", "Other"));
+            Assertions.assertEquals("<html><body>Готово</body></html>", resumed.completedChapter("ch0.xhtml"));
+            Assertions.assertNull(resumed.completedChapter("ch2.xhtml"));
+            Assertions.assertEquals(1, resumed.completedChapterCount());
+        }
+    }
+
+    @Test
+    public void testRecordAfterTornLineSurvivesNextRestart() throws Exception {
+        Path file = dir.resolve("book_RU.epub.journal");
+        try (TranslationJournal journal = TranslationJournal.open(file)) {
+            journal.recordBatch("ch1.xhtml", List.of("Hello"), List.of("Привет"));
+        }
+        Files.writeString(file, "{\"href\":\"ch1.xhtml\",\"src\":[\"Wor", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (TranslationJournal resumed = TranslationJournal.open(file)) {
+            resumed.recordBatch("ch1.xhtml", List.of("World"), List.of("Мир"));
+        }
+        try (TranslationJournal again = TranslationJournal.open(file)) {
+            Assertions.assertEquals("Привет", again.completedSegment("ch1.xhtml", "Hello"));
+            Assertions.assertEquals("Мир", again.completedSegment("ch1.xhtml", "World"));
+        }
+    }
+
+    @Test
+    public void testChapterXhtmlIsReadFromDiskNotKeptInMemory() throws Exception {
+        Path file = dir.resolve("book_RU.epub.journal");
+        try (TranslationJournal journal = TranslationJournal.open(file)) {
+            for (int i = 0; i < 50; i++) {
+                journal.recordChapter("ch" + i + ".xhtml", "<html><body>chapter-" + i + " Готово</body></html>");
+            }
+            Assertions.assertEquals(50, journal.completedChapterCount());
+            // Подменяем текст главы на диске той же длины: журнал должен вернуть то, что в файле
+            String content = Files.readString(file, StandardCharsets.UTF_8);
+            Files.writeString(file, content.replace("chapter-7 ", "CHAPTER-7 "), StandardCharsets.UTF_8);
+            Assertions.assertEquals("<html><body>CHAPTER-7 Готово</body></html>", journal.completedChapter("ch7.xhtml"));
+            Assertions.assertEquals("<html><body>chapter-49 Готово</body></html>", journal.completedChapter("ch49.xhtml"));
+        }
+        try (TranslationJournal resumed = TranslationJournal.open(file)) {
+            Assertions.assertEquals(50, resumed.completedChapterCount());
+            Assertions.assertEquals("<html><body>chapter-0 Готово</body></html>", resumed.completedChapter("ch0.xhtml"));
+            Assertions.assertEquals("<html><body>CHAPTER-7 Готово</body></html>", resumed.completedChapter("ch7.xhtml"));
+        }
+    }
+
+    @Test
+    public void testFinishRemovesJournal() throws Exception {
+        Path file = dir.resolve("book_RU.epub.journal");
+        TranslationJournal journal = TranslationJournal.open(file);
+        journal.recordChapter("ch0.xhtml", "<html/>");
+        journal.finish();
+        Assertions.assertFalse(Files.exists(file));
+    }
+}
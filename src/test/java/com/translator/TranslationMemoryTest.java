@@ -0,0 +1,37 @@
+package com.translator;
+
+import com.translator.core.TranslationMemory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+public class TranslationMemoryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testStoredSegmentIsFoundAfterRestart() throws Exception {
+        TranslationMemory first = new TranslationMemory(dir, 10);
+        Assertions.assertNull(first.lookup("Hello", "llama3", "prompt"));
+        first.store("Hello", "llama3", "prompt", "Привет");
+        Assertions.assertEquals("Привет", first.lookup("Hello", "llama3", "prompt"));
+        Assertions.assertEquals(1, first.getHits());
+        Assertions.assertEquals(1, first.getMisses());
+
+        // Новый экземпляр с пустым LRU должен поднять перевод с диска
+        TranslationMemory second = new TranslationMemory(dir, 10);
+        Assertions.assertEquals("Привет", second.lookup("Hello", "llama3", "prompt"));
+    }
+
+    @Test
+    public void testKeyDependsOnModelAndPrompt() throws Exception {
+        TranslationMemory memory = new TranslationMemory(dir, 10);
+        memory.store("Hello", "llama3", "prompt", "Привет");
+
+        Assertions.assertNull(memory.lookup("Hello", "mistral", "prompt"));
+        Assertions.assertNull(memory.lookup("Hello", "llama3", "other prompt"));
+    }
+}
@@ -0,0 +1,52 @@
+package com.translator;
+
+import com.google.gson.JsonObject;
+import com.translator.service.TranslateService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+public class WarmUpTest {
+
+    private OllamaStub stub;
+
+    @AfterEach
+    public void stopStub() {
+        if (stub != null) stub.close();
+    }
+
+    @Test
+    public void testWarmUpPrimesEverySlotWithTheBatchPrefix() throws Exception {
+        ConcurrentLinkedQueue<JsonObject> requests = new ConcurrentLinkedQueue<>();
+        stub = OllamaStub.start(3, request -> {
+            requests.add(request);
+            JsonObject response = OllamaStub.reply("Привет.");
+            response.addProperty("prompt_eval_duration", 5_000_000L);
+            return response;
+        });
+        TranslateService service = stub.service();
+        try {
+            service.warmUp().get(10, TimeUnit.SECONDS);
+            Assertions.assertEquals(3, requests.size());
+            service.translateBatch("Hello [[[...]]] ");
+
+            List<JsonObject> all = new ArrayList<>(requests);
+            JsonObject batch = all.get(3);
+            for (JsonObject request : all) {
+                // Тот же префикс и те же параметры, что у пакетов, иначе кэш слота не пригодится
+                Assertions.assertEquals(service.getSystemPrompt(), request.getAsJsonArray("messages")
+                        .get(0).getAsJsonObject().get("content").getAsString());
+                Assertions.assertEquals(batch.get("options"), request.get("options"));
+                Assertions.assertEquals("30m", request.get("keep_alive").getAsString());
+            }
+            Assertions.assertTrue(batch.getAsJsonObject("options").get("num_keep").getAsInt() > 16);
+        } finally {
+            service.close();
+        }
+    }
+}